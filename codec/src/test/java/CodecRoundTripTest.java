@@ -0,0 +1,107 @@
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Encodes and decodes a small image, of a size that needs padding, with every chroma mode and engine.
+ */
+class CodecRoundTripTest {
+    private static final int WIDTH = 61;
+    private static final int HEIGHT = 45;
+    // mean absolute error per sample the smooth test image stays under at the default quality
+    private static final double MEAN_ERROR = 2;
+
+    static Stream<Arguments> modesAndEngines() {
+        Stream.Builder<Arguments> arguments = Stream.builder();
+        for (ChromaMode mode : ChromaMode.values())
+            for (DCTEngine engine : new DCTEngine[]{new ReferenceDCT(), new SeparableDCT(), new ButterflyDCT(), new IntegerDCT()})
+                arguments.add(Arguments.of(mode, engine));
+        return arguments.build();
+    }
+
+    private static CodecSettings settings(ChromaMode mode, DCTEngine engine, int restartInterval) {
+        CodecSettings settings = new CodecSettings();
+        settings.setChromaMode(mode);
+        settings.setDctEngine(engine);
+        settings.setRestartInterval(restartInterval);
+        return settings;
+    }
+
+    // smooth gradients with a little noise, the blocks from column shift on moved down by one level
+    private static Image image(long seed, int shift) {
+        Random random = new Random(seed);
+        Plane[] planes = new Plane[3];
+        for (int i = 0; i < 3; i++) {
+            planes[i] = Plane.allocate(WIDTH, HEIGHT);
+            for (int line = 0; line < HEIGHT; line++)
+                for (int column = 0; column < WIDTH; column++) {
+                    float value = 40 + i * 30 + line * 2 + column + random.nextInt(3) - (column / 8 * 8 >= shift ? 1 : 0);
+                    planes[i].set(line, column, value);
+                }
+        }
+        return new Image(planes[0], planes[1], planes[2]);
+    }
+
+    private static void assertSame(Image expected, Image actual) {
+        Plane[] expectedPlanes = {expected.getY(), expected.getU(), expected.getV()};
+        Plane[] actualPlanes = {actual.getY(), actual.getU(), actual.getV()};
+        for (int i = 0; i < 3; i++)
+            assertTrue(expectedPlanes[i].sameSamples(actualPlanes[i], 0, 0, WIDTH, HEIGHT), "plane " + i);
+    }
+
+    @ParameterizedTest
+    @MethodSource("modesAndEngines")
+    void decodesCloseToTheInput(ChromaMode mode, DCTEngine engine) {
+        CodecSettings settings = settings(mode, engine, 0);
+        Image input = image(1, WIDTH);
+        Image decoded = new Decoder(settings).decode(new Encoder(settings).encode(input));
+
+        assertEquals(WIDTH, decoded.getWidth());
+        assertEquals(HEIGHT, decoded.getHeight());
+        assertEquals(settings.getSampleStorage(), decoded.getStorage());
+        Plane[] inputPlanes = {input.getY(), input.getU(), input.getV()};
+        Plane[] decodedPlanes = {decoded.getY(), decoded.getU(), decoded.getV()};
+        for (int i = 0; i < 3; i++) {
+            double error = 0;
+            for (int line = 0; line < HEIGHT; line++)
+                for (int column = 0; column < WIDTH; column++)
+                    error += Math.abs(inputPlanes[i].get(line, column) - decodedPlanes[i].get(line, column));
+            error /= WIDTH * HEIGHT;
+            assertTrue(error < MEAN_ERROR, "mean error " + error + " of plane " + i);
+        }
+    }
+
+    // restarts only change how the coefficients are entropy coded
+    @ParameterizedTest
+    @MethodSource("modesAndEngines")
+    void restartsDecodeTheSame(ChromaMode mode, DCTEngine engine) {
+        Image input = image(2, WIDTH);
+        CodecSettings plain = settings(mode, engine, 0);
+        CodecSettings restarts = settings(mode, engine, 3);
+        EncodedImage encoded = new Encoder(restarts).encode(input);
+        assertTrue(encoded.getRestarts().length > 1);
+        assertSame(new Decoder(plain).decode(new Encoder(plain).encode(input)), new Decoder(restarts).decode(encoded));
+    }
+
+    @ParameterizedTest
+    @MethodSource("modesAndEngines")
+    void deltaFramesDecodeLikeWholeFrames(ChromaMode mode, DCTEngine engine) {
+        CodecSettings settings = settings(mode, engine, 5);
+        SequenceEncoder sequenceEncoder = new SequenceEncoder(settings);
+        SequenceDecoder sequenceDecoder = new SequenceDecoder(settings);
+        Image first = image(3, WIDTH);
+        Image second = image(3, 32);
+        sequenceDecoder.decode(sequenceEncoder.encode(first));
+        EncodedImage delta = sequenceEncoder.encode(second);
+        assertTrue(delta.isDelta());
+        assertTrue(delta.getPayloadLength() < new Encoder(settings).encode(second).getPayloadLength());
+
+        assertSame(new Decoder(settings).decode(new Encoder(settings).encode(second)), sequenceDecoder.decode(delta));
+    }
+}
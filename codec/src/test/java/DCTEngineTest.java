@@ -0,0 +1,101 @@
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the engines against {@link ReferenceDCT} on random level-shifted blocks, within the bounds
+ * {@link DCTEngine} documents.
+ */
+class DCTEngineTest {
+    private static final int BLOCKS = 2000;
+    private static final DCTEngine REFERENCE = new ReferenceDCT();
+    private static final QuantizationTable TABLE = QuantizationTable.luminance(80);
+
+    static Stream<DCTEngine> floatEngines() {
+        return Stream.of(new SeparableDCT(), new ButterflyDCT());
+    }
+
+    static Stream<DCTEngine> engines() {
+        return Stream.of(new SeparableDCT(), new ButterflyDCT(), new IntegerDCT());
+    }
+
+    private static double[] randomBlock(Random random) {
+        double[] block = new double[64];
+        for (int i = 0; i < 64; i++) block[i] = random.nextInt(256) - 128;
+        return block;
+    }
+
+    private static void assertWithin(double[] expected, double[] actual, double tolerance, String what) {
+        for (int i = 0; i < 64; i++)
+            assertEquals(expected[i], actual[i], tolerance, what + " at " + i);
+    }
+
+    @ParameterizedTest
+    @MethodSource("floatEngines")
+    void forwardMatchesReference(DCTEngine engine) {
+        Random random = new Random(1);
+        for (int n = 0; n < BLOCKS; n++) {
+            double[] expected = randomBlock(random);
+            double[] actual = expected.clone();
+            REFERENCE.forwardDCT(expected);
+            engine.forwardDCT(actual);
+            assertWithin(expected, actual, DCTEngine.TOLERANCE, "coefficient");
+        }
+    }
+
+    // reconstructed samples are truncated, so one that sits on a boundary may come out one off
+    @ParameterizedTest
+    @MethodSource("floatEngines")
+    void inverseMatchesReference(DCTEngine engine) {
+        Random random = new Random(2);
+        for (int n = 0; n < BLOCKS; n++) {
+            double[] expected = randomBlock(random);
+            REFERENCE.forwardDCT(expected);
+            double[] actual = expected.clone();
+            REFERENCE.inverseDCT(expected);
+            engine.inverseDCT(actual);
+            assertWithin(expected, actual, 1, "sample");
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("engines")
+    void quantizedPathsStayWithinOneOfReference(DCTEngine engine) {
+        Random random = new Random(3);
+        for (int n = 0; n < BLOCKS; n++) {
+            double[] expected = randomBlock(random);
+            double[] actual = expected.clone();
+            REFERENCE.forwardQuantized(expected, REFERENCE.quantizers(TABLE));
+            engine.forwardQuantized(actual, engine.quantizers(TABLE));
+            assertWithin(expected, actual, 1, "quantized coefficient");
+
+            double[] coefficients = expected.clone();
+            actual = expected.clone();
+            REFERENCE.inverseDequantized(expected, REFERENCE.dequantizers(TABLE));
+            engine.inverseDequantized(actual, engine.dequantizers(TABLE));
+            assertWithin(expected, actual, 1, "reconstructed sample of " + Arrays.toString(coefficients));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("engines")
+    void knownZerosGiveTheFullInverse(DCTEngine engine) {
+        Random random = new Random(4);
+        double[] dequantizers = engine.dequantizers(TABLE);
+        for (int n = 0; n < BLOCKS; n++) {
+            double[] expected = randomBlock(random);
+            REFERENCE.forwardQuantized(expected, REFERENCE.quantizers(TABLE));
+            int end = 1 + random.nextInt(64);
+            for (int k = end; k < 64; k++) expected[EntropyCoder.ZIGZAG[k]] = 0;
+            double[] actual = expected.clone();
+            engine.inverseDequantized(expected, dequantizers);
+            engine.inverseDequantized(actual, dequantizers, end);
+            assertWithin(expected, actual, 0, "sample with end " + end);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+import benchmarks.Stages;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * {@link Stages} over the codec classes. Image level stages work on preallocated planes so they measure
+ * the stage and not the allocation; block level stages walk the blocks of a synthetic image in order.
+ */
+public class CodecStages implements Stages {
+    private Path directory;
+
+    private Path input;
+    private Path coded;
+    private Path written;
+    private Path decoded;
+    private int height;
+    private Plane r, g, b, y, u, v;
+    private Plane chroma, upsampled;
+    private Image image;
+    private CodecSettings settings;
+    private StreamingCodec streamingCodec;
+    private Encoder imageEncoder;
+    private Decoder imageDecoder;
+    private EncodedImage encoded;
+    private ByteBuffer pixels;
+    private RegionDecoder regionDecoder;
+    private RegionDecoder cachedRegionDecoder;
+    private int panStep;
+
+    private DCTEngine engine;
+    private double[] quantizers;
+    private double[] dequantizers;
+    private double[][] samples;
+    private double[][] coefficients;
+    private double[][] quantized;
+    private byte[] payload;
+    private final double[] block = new double[64];
+    private final int[] list = new int[64];
+    private EntropyCoder encoder;
+    private EntropyCoder decoder;
+    private BitWriter writer;
+    private BitReader reader;
+    private int next;
+    private int decodedBlocks;
+
+    @Override
+    public void prepareImage(int width, int height) throws IOException {
+        directory = Files.createTempDirectory("codec-bench");
+        input = directory.resolve("input.ppm");
+        coded = directory.resolve("stream.bin");
+        written = directory.resolve("written.ppm");
+        decoded = directory.resolve("decoded.ppm");
+        SyntheticImage.write(input, width, height, 42);
+
+        this.height = height;
+        r = Plane.allocate(width, height);
+        g = Plane.allocate(width, height);
+        b = Plane.allocate(width, height);
+        y = Plane.allocate(width, height);
+        u = Plane.allocate(width, height);
+        v = Plane.allocate(width, height);
+        new PPMReader(input.toString()).readPixels(r, g, b);
+        ColorConverter.rgbToYuv(r, g, b, y, u, v, height);
+        chroma = Plane.allocate((width + 1) / 2, (height + 1) / 2);
+        upsampled = Plane.allocate(width, height);
+        image = new Image(input.toString());
+        settings = new CodecSettings();
+        streamingCodec = new StreamingCodec(settings);
+        imageEncoder = new Encoder(settings);
+        imageDecoder = new Decoder(settings);
+        encoded = imageEncoder.encode(image);
+        pixels = ByteBuffer.allocate(width * height * 3);
+        Path region = directory.resolve("region.yuvj");
+        encoded.write(region.toString());
+        YuvjReader regionFile = new YuvjReader(region.toString());
+        regionDecoder = new RegionDecoder(regionFile, settings);
+        CodecSettings cachedSettings = new CodecSettings();
+        cachedSettings.setTileCache(new TileCache((long) width * height * 8));
+        cachedRegionDecoder = new RegionDecoder(regionFile, cachedSettings);
+    }
+
+    @Override
+    public Object readImage() {
+        try {
+            new PPMReader(input.toString()).readPixels(r, g, b);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return r;
+    }
+
+    @Override
+    public void writeImage() throws IOException {
+        PPMWriter.write(written.toString(), r, g, b, PPMWriter.Format.P6, null);
+    }
+
+    @Override
+    public Object convertRGBtoYUV() {
+        ColorConverter.rgbToYuv(r, g, b, y, u, v, height);
+        return y;
+    }
+
+    @Override
+    public Object convertYUVtoRGB() {
+        ColorConverter.yuvToRgb(y, u, v, r, g, b, height);
+        return r;
+    }
+
+    @Override
+    public Object subSampling() {
+        ChromaMode.YUV420.downsample(u, chroma, chroma.getHeight());
+        return chroma;
+    }
+
+    @Override
+    public Object upSampling() {
+        ChromaMode.YUV420.upsample(chroma, upsampled, height);
+        return upsampled;
+    }
+
+    @Override
+    public Object encodeDecode() {
+        return imageDecoder.decode(imageEncoder.encode(image));
+    }
+
+    @Override
+    public void streamingEncode() throws IOException {
+        streamingCodec.encode(input.toString(), coded.toString());
+    }
+
+    @Override
+    public void streamingDecode() throws IOException {
+        streamingCodec.decode(coded.toString(), decoded.toString(), PPMWriter.Format.P6);
+    }
+
+    @Override
+    public Object decodeToBuffer() throws IOException {
+        pixels.clear();
+        streamingCodec.decode(encoded, RowSink.of(pixels));
+        return pixels;
+    }
+
+    @Override
+    public Object regionDecode() {
+        return pan(regionDecoder);
+    }
+
+    @Override
+    public Object cachedRegionDecode() {
+        return pan(cachedRegionDecoder);
+    }
+
+    private Object pan(RegionDecoder decoder) {
+        int width = r.getWidth() / 2;
+        int height = r.getHeight() / 2;
+        int step = panStep++ % (Math.min(width, height) / 16);
+        return decoder.decode(step * 16, step * 16, width, height, 1);
+    }
+
+    @Override
+    public void prepareBlocks(String engineName) throws IOException {
+        prepareImage(256, 256);
+        switch (engineName) {
+            case "reference":
+                engine = new ReferenceDCT();
+                break;
+            case "separable":
+                engine = new SeparableDCT();
+                break;
+            case "butterfly":
+                engine = new ButterflyDCT();
+                break;
+            case "integer":
+                engine = new IntegerDCT();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown DCT engine " + engineName);
+        }
+        QuantizationTable table = QuantizationTable.luminance(settings.getQuality());
+        quantizers = engine.quantizers(table);
+        dequantizers = engine.dequantizers(table);
+
+        int count = (y.getWidth() / 8) * (y.getHeight() / 8);
+        samples = new double[count][64];
+        coefficients = new double[count][64];
+        quantized = new double[count][64];
+        encoder = EntropyCoder.standard();
+        writer = new BitWriter();
+        int i = 0;
+        for (int line = 0; line < y.getHeight(); line += 8)
+            for (int column = 0; column < y.getWidth(); column += 8, i++) {
+                // level shifted as the codec does before the forward transform
+                y.read(line, column, 8, samples[i]);
+                for (int k = 0; k < 64; k++) samples[i][k] -= 128;
+                System.arraycopy(samples[i], 0, coefficients[i], 0, 64);
+                System.arraycopy(samples[i], 0, quantized[i], 0, 64);
+                engine.forwardDCT(coefficients[i]);
+                engine.forwardQuantized(quantized[i], quantizers);
+                encoder.encodeBlock(quantized[i], 0, writer);
+            }
+        payload = writer.toByteArray();
+        encoder.reset();
+        writer.reset();
+        decoder = EntropyCoder.standard();
+        reader = new BitReader(payload);
+    }
+
+    private int nextBlock() {
+        int current = next;
+        next = next + 1 == samples.length ? 0 : next + 1;
+        return current;
+    }
+
+    @Override
+    public Object divideMatrix() {
+        int i = nextBlock();
+        y.read((i / 32) * 8, (i % 32) * 8, 8, block);
+        return block;
+    }
+
+    @Override
+    public Object forwardDCT() {
+        System.arraycopy(samples[nextBlock()], 0, block, 0, 64);
+        engine.forwardDCT(block);
+        return block;
+    }
+
+    @Override
+    public Object inverseDCT() {
+        System.arraycopy(coefficients[nextBlock()], 0, block, 0, 64);
+        engine.inverseDCT(block);
+        return block;
+    }
+
+    // the engines fold quantization into the transform, so this is FDCT + quantization; compare with forwardDCT
+    @Override
+    public Object quantization() {
+        System.arraycopy(samples[nextBlock()], 0, block, 0, 64);
+        engine.forwardQuantized(block, quantizers);
+        return block;
+    }
+
+    @Override
+    public Object dequantization() {
+        System.arraycopy(quantized[nextBlock()], 0, block, 0, 64);
+        engine.inverseDequantized(block, dequantizers);
+        return block;
+    }
+
+    @Override
+    public Object zigzagCrossing() {
+        EntropyCoder.zigzagCrossing(quantized[nextBlock()], list);
+        return list;
+    }
+
+    @Override
+    public Object encodeBlock() {
+        int i = nextBlock();
+        if (i == 0) {
+            encoder.reset();
+            writer.reset();
+        }
+        encoder.encodeBlock(quantized[i], 0, writer);
+        return writer;
+    }
+
+    @Override
+    public Object decodeBlock() {
+        if (decodedBlocks == samples.length) {
+            decodedBlocks = 0;
+            decoder.reset();
+            reader = new BitReader(payload);
+        }
+        decodedBlocks++;
+        decoder.decodeBlock(reader, 0, block);
+        return block;
+    }
+
+    @Override
+    public void tearDown() throws IOException {
+        if (directory == null)
+            return;
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,37 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Deterministic test images for the benchmarks: smooth gradients with some texture and noise, so every
+ * coefficient category and run length shows up and the results do not depend on files in the repo.
+ */
+public class SyntheticImage {
+    public static void write(Path file, int width, int height, long seed) throws IOException {
+        Random random = new Random(seed);
+        byte[] row = new byte[width * 3];
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            out.write(String.format("P6\n# synthetic %sx%s\n%s %s\n255\n", width, height, width, height)
+                    .getBytes(StandardCharsets.US_ASCII));
+            for (int line = 0; line < height; line++) {
+                for (int column = 0, p = 0; column < width; column++) {
+                    double x = (double) column / width;
+                    double y = (double) line / height;
+                    double texture = 40 * Math.sin(column * 0.21) * Math.cos(line * 0.13);
+                    row[p++] = (byte) clamp(255 * x + texture + random.nextGaussian() * 6);
+                    row[p++] = (byte) clamp(255 * y - texture + random.nextGaussian() * 6);
+                    row[p++] = (byte) clamp(128 + 100 * Math.sin(6 * (x + y)) + random.nextGaussian() * 6);
+                }
+                out.write(row);
+            }
+        }
+    }
+
+    private static int clamp(double value) {
+        return (int) Math.max(0, Math.min(255, value));
+    }
+}
@@ -0,0 +1,86 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per block stages. Every call copies the next 8x8 block of a synthetic image into the scratch block and
+ * runs one stage on it, so the scores include a 64 element copy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockBenchmark {
+    @Param({"butterfly", "separable", "reference", "integer"})
+    public String engine;
+
+    private Stages stages;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        stages = Stages.load();
+        stages.prepareBlocks(engine);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        stages.tearDown();
+    }
+
+    @Benchmark
+    public Object divideMatrix() {
+        return stages.divideMatrix();
+    }
+
+    @Benchmark
+    public Object forwardDCT() {
+        return stages.forwardDCT();
+    }
+
+    @Benchmark
+    public Object inverseDCT() {
+        return stages.inverseDCT();
+    }
+
+    @Benchmark
+    public Object quantization() {
+        return stages.quantization();
+    }
+
+    @Benchmark
+    public Object dequantization() {
+        return stages.dequantization();
+    }
+
+    @Benchmark
+    public Object zigzagCrossing() {
+        return stages.zigzagCrossing();
+    }
+
+    @Benchmark
+    public Object encodeBlock() {
+        return stages.encodeBlock();
+    }
+
+    @Benchmark
+    public Object decodeBlock() {
+        return stages.decodeBlock();
+    }
+}
@@ -0,0 +1,107 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole image stages on synthetic images of several resolutions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageBenchmark {
+    @Param({"320x240", "1280x720", "1920x1080"})
+    public String resolution;
+
+    private Stages stages;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String[] size = resolution.split("x");
+        stages = Stages.load();
+        stages.prepareImage(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+        stages.streamingEncode();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        stages.tearDown();
+    }
+
+    @Benchmark
+    public Object readImage() {
+        return stages.readImage();
+    }
+
+    @Benchmark
+    public void writeImage() throws IOException {
+        stages.writeImage();
+    }
+
+    @Benchmark
+    public Object convertRGBtoYUV() {
+        return stages.convertRGBtoYUV();
+    }
+
+    @Benchmark
+    public Object convertYUVtoRGB() {
+        return stages.convertYUVtoRGB();
+    }
+
+    @Benchmark
+    public Object subSampling() {
+        return stages.subSampling();
+    }
+
+    @Benchmark
+    public Object upSampling() {
+        return stages.upSampling();
+    }
+
+    @Benchmark
+    public Object encodeDecode() {
+        return stages.encodeDecode();
+    }
+
+    @Benchmark
+    public void streamingEncode() throws IOException {
+        stages.streamingEncode();
+    }
+
+    @Benchmark
+    public void streamingDecode() throws IOException {
+        stages.streamingDecode();
+    }
+
+    @Benchmark
+    public Object decodeToBuffer() throws IOException {
+        return stages.decodeToBuffer();
+    }
+
+    @Benchmark
+    public Object regionDecode() {
+        return stages.regionDecode();
+    }
+
+    @Benchmark
+    public Object cachedRegionDecode() {
+        return stages.cachedRegionDecode();
+    }
+}
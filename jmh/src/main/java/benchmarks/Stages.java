@@ -0,0 +1,93 @@
+package benchmarks;
+
+import java.io.IOException;
+
+/**
+ * The codec stages as seen by the benchmarks.
+ * <p>
+ * The codec classes live in the unnamed package, which a named package cannot import, and JMH only accepts
+ * benchmarks in a named package. The stages are therefore implemented by {@code CodecStages} in the unnamed
+ * package and reached through this interface. The single implementation keeps every call monomorphic.
+ */
+public interface Stages {
+    static Stages load() {
+        try {
+            return (Stages) Class.forName("CodecStages").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("CodecStages is missing from the class path", e);
+        }
+    }
+
+    /**
+     * Generates a width x height synthetic image and reads it once, for the image level stages.
+     */
+    void prepareImage(int width, int height) throws IOException;
+
+    Object readImage();
+
+    void writeImage() throws IOException;
+
+    Object convertRGBtoYUV();
+
+    Object convertYUVtoRGB();
+
+    /**
+     * 4:2:0 decimation of the U plane.
+     */
+    Object subSampling();
+
+    /**
+     * 4:2:0 U plane back to full resolution.
+     */
+    Object upSampling();
+
+    /**
+     * Full in-memory encode and decode through a reused Encoder and Decoder.
+     */
+    Object encodeDecode();
+
+    void streamingEncode() throws IOException;
+
+    void streamingDecode() throws IOException;
+
+    /**
+     * Fused decode of the in-memory coded image to packed RGB rows in a preallocated buffer.
+     */
+    Object decodeToBuffer() throws IOException;
+
+    /**
+     * Region decode of a half size window that moves 16 pixels right and down with every call, wrapping
+     * around, like a viewer panning over the image.
+     */
+    Object regionDecode();
+
+    /**
+     * {@link #regionDecode} with a tile cache large enough for the whole image, so only the MCUs a window
+     * uncovers for the first time are decoded.
+     */
+    Object cachedRegionDecode();
+
+    /**
+     * Takes the blocks of a synthetic image and selects the DCT engine (reference, separable, butterfly or
+     * integer) for the block level stages. Each block level call works on the next block of that image.
+     */
+    void prepareBlocks(String engine) throws IOException;
+
+    Object divideMatrix();
+
+    Object forwardDCT();
+
+    Object inverseDCT();
+
+    Object quantization();
+
+    Object dequantization();
+
+    Object zigzagCrossing();
+
+    Object encodeBlock();
+
+    Object decodeBlock();
+
+    void tearDown() throws IOException;
+}
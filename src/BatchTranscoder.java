@@ -0,0 +1,234 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Transcodes many PPM files to .yuvj through three stages, each with its own fixed set of threads:
+ * read (parse the PPM into planes), encode ({@link StreamingCodec#encode(Plane, Plane, Plane)}, in memory)
+ * and write (the .yuvj file). The stages hand jobs over through bounded queues, so a slow stage blocks the
+ * ones before it instead of letting decoded frames pile up: at most readers + capacity + encoders frames
+ * are held at once, whatever the number of files.
+ * <p>
+ * A job that fails, with an exception or an error such as running out of memory on a large image, is recorded
+ * and skipped; the others carry on. The workers only stop early when {@link #transcode} is interrupted.
+ */
+public class BatchTranscoder {
+    // passed down a queue once per worker of the next stage when the stage before it has drained
+    private static final Job END = new Job(null, null);
+
+    private final CodecSettings settings;
+    private final int readers;
+    private final int encoders;
+    private final int writers;
+    private final int capacity;
+
+    public BatchTranscoder(CodecSettings settings) {
+        this(settings, 2, Runtime.getRuntime().availableProcessors(), 2, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param capacity jobs each queue between two stages holds before the stage feeding it blocks
+     */
+    public BatchTranscoder(CodecSettings settings, int readers, int encoders, int writers, int capacity) {
+        if (readers < 1 || encoders < 1 || writers < 1 || capacity < 1)
+            throw new IllegalArgumentException(String.format("Invalid batch configuration: %s readers, %s encoders, %s writers, capacity %s",
+                    readers, encoders, writers, capacity));
+        this.settings = settings;
+        this.readers = readers;
+        this.encoders = encoders;
+        this.writers = writers;
+        this.capacity = capacity;
+    }
+
+    /**
+     * One file to transcode and where its .yuvj goes.
+     */
+    public static class Job {
+        private final Path input;
+        private final Path output;
+        private Plane[] rgb;
+        private EncodedImage encoded;
+
+        public Job(Path input, Path output) {
+            this.input = input;
+            this.output = output;
+        }
+
+        public Path getInput() {
+            return input;
+        }
+
+        public Path getOutput() {
+            return output;
+        }
+    }
+
+    public static class Failure {
+        private final Job job;
+        private final Throwable error;
+
+        Failure(Job job, Throwable error) {
+            this.job = job;
+            this.error = error;
+        }
+
+        public Job getJob() {
+            return job;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+    }
+
+    /**
+     * A job for every .ppm file under the given files and directories. Files under a directory keep their path
+     * relative to it inside outputDirectory; files given directly go straight into it.
+     */
+    public static List<Job> jobs(List<Path> inputs, Path outputDirectory) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        for (Path input : inputs) {
+            if (Files.isDirectory(input)) {
+                List<Path> files;
+                try (Stream<Path> walk = Files.walk(input)) {
+                    files = walk.filter(path -> path.toString().endsWith(".ppm") && Files.isRegularFile(path))
+                            .sorted().collect(Collectors.toList());
+                }
+                for (Path file : files)
+                    jobs.add(new Job(file, outputDirectory.resolve(withExtension(input.relativize(file)))));
+            } else {
+                jobs.add(new Job(input, outputDirectory.resolve(withExtension(input.getFileName()))));
+            }
+        }
+        return jobs;
+    }
+
+    private static Path withExtension(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return path.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + ".yuvj");
+    }
+
+    /**
+     * Runs every job and returns the ones that failed.
+     */
+    public List<Failure> transcode(List<Job> jobs) throws InterruptedException {
+        long start = System.nanoTime();
+        List<Failure> failures = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean cancelled = new AtomicBoolean();
+        BlockingQueue<Job> pending = new LinkedBlockingQueue<>(jobs);
+        BlockingQueue<Job> read = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<Job> encoded = new ArrayBlockingQueue<>(capacity);
+        for (int i = 0; i < readers; i++)
+            pending.add(END);
+
+        List<Thread> threads = new ArrayList<>();
+        threads.addAll(stage("read", readers, pending, read, encoders, failures, cancelled, job -> {
+            PPMReader reader = new PPMReader(job.input.toString());
+            job.rgb = new Plane[3];
+            for (int i = 0; i < 3; i++)
+                job.rgb[i] = Plane.allocate(reader.getWidth(), reader.getHeight(), settings.getSampleStorage());
+            reader.readPixels(job.rgb[0], job.rgb[1], job.rgb[2]);
+        }));
+        StreamingCodec codec = new StreamingCodec(settings);
+        threads.addAll(stage("encode", encoders, read, encoded, writers, failures, cancelled, job -> {
+            job.encoded = codec.encode(job.rgb[0], job.rgb[1], job.rgb[2]);
+            job.rgb = null;
+        }));
+        threads.addAll(stage("write", writers, encoded, null, 0, failures, cancelled, job -> {
+            Path parent = job.output.toAbsolutePath().getParent();
+            if (parent != null)
+                Files.createDirectories(parent);
+            job.encoded.write(job.output.toString());
+            job.encoded = null;
+        }));
+        try {
+            for (Thread thread : threads)
+                thread.join();
+        } catch (InterruptedException e) {
+            cancelled.set(true);
+            for (Thread thread : threads)
+                thread.interrupt();
+            throw e;
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Log.info("Transcoded %s of %s files in %.1f s, %.1f files/s", jobs.size() - failures.size(), jobs.size(),
+                seconds, jobs.size() / seconds);
+        return failures;
+    }
+
+    private interface Step {
+        void run(Job job) throws IOException;
+    }
+
+    // starts workers taking jobs from in until each has seen END; the last one to stop, however it stops, sends END
+    // to every next worker
+    private List<Thread> stage(String name, int workers, BlockingQueue<Job> in, BlockingQueue<Job> out, int nextWorkers,
+                               List<Failure> failures, AtomicBoolean cancelled, Step step) {
+        AtomicInteger running = new AtomicInteger(workers);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (Job job = take(in, cancelled); job != null && job != END; job = take(in, cancelled)) {
+                        try {
+                            step.run(job);
+                        } catch (IOException | RuntimeException | Error e) {
+                            job.rgb = null;
+                            job.encoded = null;
+                            failures.add(new Failure(job, e));
+                            continue;
+                        }
+                        if (out != null && !put(out, job, cancelled))
+                            break;
+                    }
+                } finally {
+                    if (running.decrementAndGet() == 0)
+                        for (int k = 0; k < nextWorkers; k++)
+                            if (!put(out, END, cancelled))
+                                break;
+                }
+            }, name + "-" + (i + 1));
+            thread.start();
+            threads.add(thread);
+        }
+        return threads;
+    }
+
+    // workers belong to transcode, which interrupts them to cancel the batch; any other interrupt is ignored, so
+    // a stray one cannot drop jobs or leave another stage waiting. Returns null once the batch is cancelled.
+    private static Job take(BlockingQueue<Job> queue, AtomicBoolean cancelled) {
+        while (!cancelled.get()) {
+            try {
+                return queue.take();
+            } catch (InterruptedException e) {
+                // cancelled or stray, see the loop condition
+            }
+        }
+        return null;
+    }
+
+    // like take, false once the batch is cancelled
+    private static boolean put(BlockingQueue<Job> queue, Job job, AtomicBoolean cancelled) {
+        while (!cancelled.get()) {
+            try {
+                queue.put(job);
+                return true;
+            } catch (InterruptedException e) {
+                // cancelled or stray, see the loop condition
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,81 @@
+import java.nio.ByteBuffer;
+
+/**
+ * MSB-first bit reader matching {@link BitWriter}. Refills a long a byte at a time from any
+ * {@link ByteBuffer}, heap or memory-mapped, using absolute reads so the buffer itself is never modified.
+ */
+public class BitReader {
+    private final ByteBuffer data;
+    private int position;
+    private final int limit;
+    private long accumulator;
+    private int count;
+
+    public BitReader(byte[] data) {
+        this(ByteBuffer.wrap(data));
+    }
+
+    public BitReader(ByteBuffer data) {
+        this(data, data.position(), data.limit());
+    }
+
+    public BitReader(ByteBuffer data, int from, int to) {
+        this.data = data;
+        this.position = from;
+        this.limit = to;
+    }
+
+    private void fill() {
+        while (count <= 56) {
+            int next = position < limit ? data.get(position) & 0xff : 0;
+            position++;
+            accumulator = accumulator << 8 | next;
+            count += 8;
+        }
+    }
+
+    /**
+     * Returns the next length bits without consuming them, length at most 32.
+     */
+    public int peek(int length) {
+        if (count < length)
+            fill();
+        return (int) (accumulator >>> (count - length)) & (int) ((1L << length) - 1);
+    }
+
+    public void skip(int length) {
+        count -= length;
+    }
+
+    public int read(int length) {
+        int value = peek(length);
+        count -= length;
+        return value;
+    }
+
+    /**
+     * Reads a coefficient of the given size category, reversing {@link BitWriter#writeAmplitude}.
+     */
+    public int readAmplitude(int size) {
+        if (size == 0)
+            return 0;
+        int value = read(size);
+        return value < 1 << (size - 1) ? value - (1 << size) + 1 : value;
+    }
+
+    /**
+     * Continues reading at the given byte, dropping every buffered bit.
+     */
+    public void seek(int position) {
+        this.position = position;
+        accumulator = 0;
+        count = 0;
+    }
+
+    /**
+     * Drops the bits left in the current byte.
+     */
+    public void alignToByte() {
+        count -= count & 7;
+    }
+}
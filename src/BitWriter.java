@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * MSB-first bit packer. Bits collect in a long and leave it 32 at a time.
+ */
+public class BitWriter {
+    private byte[] buffer;
+    private int size;
+    private long accumulator;
+    private int count;
+
+    public BitWriter() {
+        this(1 << 16);
+    }
+
+    public BitWriter(int capacity) {
+        buffer = new byte[Math.max(capacity, 16)];
+    }
+
+    /**
+     * Appends the low length bits of value, length at most 32.
+     */
+    public void write(int value, int length) {
+        accumulator = accumulator << length | (value & ((1L << length) - 1));
+        count += length;
+        if (count >= 32) {
+            count -= 32;
+            if (size + 4 > buffer.length)
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            int word = (int) (accumulator >>> count);
+            buffer[size] = (byte) (word >>> 24);
+            buffer[size + 1] = (byte) (word >>> 16);
+            buffer[size + 2] = (byte) (word >>> 8);
+            buffer[size + 3] = (byte) word;
+            size += 4;
+        }
+    }
+
+    /**
+     * Writes a coefficient in its size category: positive values as is, negative values as value - 1
+     * in size bits.
+     */
+    public void writeAmplitude(int value, int size) {
+        if (size == 0)
+            return;
+        write(value < 0 ? value - 1 : value, size);
+    }
+
+    /**
+     * Pads the last partial byte with ones and pushes every pending bit to the buffer.
+     */
+    public void flush() {
+        if ((count & 7) != 0)
+            write(-1, 8 - (count & 7));
+        if (size + 8 > buffer.length)
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        while (count > 0) {
+            count -= 8;
+            buffer[size++] = (byte) (accumulator >>> count);
+        }
+    }
+
+    /**
+     * Bytes written so far, not counting bits still pending in the accumulator.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Moves the complete bytes to out and empties the buffer. Pending bits stay in the accumulator,
+     * so a stream can be drained as often as needed and finished with flush and a last drain.
+     */
+    public void drainTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+        size = 0;
+    }
+
+    public byte[] toByteArray() {
+        flush();
+        return Arrays.copyOf(buffer, size);
+    }
+
+    public void reset() {
+        size = 0;
+        count = 0;
+        accumulator = 0;
+    }
+}
@@ -1,44 +1,66 @@
+/**
+ * A size x size window into a {@link Plane}. Nothing is copied: reads and writes go straight to the plane.
+ * One instance can be moved over every block of a plane instead of allocating a view per block.
+ */
 public class Block {
-    private int size;
-    private double[][] matrix;
-    private int[][] integerMatrix;
-    private String colorType;
+    private final Plane plane;
+    private int line;
+    private int column;
+    private final int size;
+    private final String colorType;
 
-    Block(int size, String colorType) {
+    Block(Plane plane, int line, int column, int size, String colorType) {
+        this.plane = plane;
+        this.line = line;
+        this.column = column;
         this.size = size;
         this.colorType = colorType;
-        matrix = new double[size][size];
     }
 
-    public double[][] getMatrix() {
-        return matrix;
+    Block moveTo(int line, int column) {
+        this.line = line;
+        this.column = column;
+        return this;
+    }
+
+    public double get(int i, int j) {
+        return plane.get(line + i, column + j);
+    }
+
+    public void set(int i, int j, double value) {
+        plane.set(line + i, column + j, (float) value);
     }
 
     public String getColorType() {
         return colorType;
     }
 
-    @Override
-    public String toString() {
-        String string = "";
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                string += matrix[i][j] + " ";
-            }
-            string += "\n";
-        }
-        return string;
+    public int getLine() {
+        return line;
     }
 
-    public void setMatrix(double[][] matrix) {
-        this.matrix = matrix;
+    public int getColumn() {
+        return column;
     }
 
-    public int[][] getIntegerMatrix() {
-        return integerMatrix;
+    public int getSize() {
+        return size;
     }
 
-    public void setIntegerMatrix(int[][] integerMatrix) {
-        this.integerMatrix = integerMatrix;
+    /**
+     * Appends the samples row by row, each followed by a space and every row by a newline.
+     */
+    public StringBuilder appendTo(StringBuilder out) {
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++)
+                out.append(get(i, j)).append(' ');
+            out.append('\n');
+        }
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder(size * size * 8)).toString();
     }
 }
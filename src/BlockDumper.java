@@ -0,0 +1,154 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes the 8x8 blocks of planes to files for debugging, on a background thread so the codec does not
+ * wait for the disk. Dumps are queued up to a fixed capacity; past it, {@link #dump} blocks until the
+ * writer catches up. A plane must not be written to once it is queued: it is read when its turn comes.
+ * A dump that fails is skipped and the writer carries on with the next; {@link #close} rethrows the first failure.
+ * <p>
+ * TEXT writes every block as 8 lines of 8 space separated samples followed by a blank line, blocks in
+ * raster order. BINARY writes the plane width and height as big-endian ints, then the 64 samples of every
+ * block, row-major, as big-endian floats, blocks in the same order.
+ */
+public class BlockDumper implements Closeable {
+    public enum Format {TEXT, BINARY}
+
+    private static final Dump END = new Dump(null, null);
+
+    private final Path directory;
+    private final Format format;
+    private final BlockingQueue<Dump> queue;
+    private final Thread thread;
+    // read by close once the writer thread has ended
+    private Throwable failure;
+
+    public BlockDumper(Path directory, Format format, int capacity) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.format = format;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(this::run, "block-dump");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static class Dump {
+        private final Plane plane;
+        private final String name;
+
+        Dump(Plane plane, String name) {
+            this.plane = plane;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Queues the blocks of plane for writing to name.txt or name.bin in the dump directory.
+     */
+    public void dump(Plane plane, String name) {
+        try {
+            queue.put(new Dump(plane, name));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            for (Dump dump = queue.take(); dump != END; dump = queue.take()) {
+                try {
+                    if (format == Format.TEXT)
+                        writeText(dump.plane, directory.resolve(dump.name + ".txt"));
+                    else
+                        writeBinary(dump.plane, directory.resolve(dump.name + ".bin"));
+                } catch (IOException | RuntimeException | Error e) {
+                    if (failure == null)
+                        failure = e;
+                    else
+                        failure.addSuppressed(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void writeText(Plane plane, Path path) throws IOException {
+        Block block = new Block(plane, 0, 0, 8, null);
+        StringBuilder text = new StringBuilder(1024);
+        try (Writer writer = new BufferedWriter(Files.newBufferedWriter(path), 1 << 16)) {
+            for (int line = 0; line < plane.getHeight(); line += 8)
+                for (int column = 0; column < plane.getWidth(); column += 8) {
+                    text.setLength(0);
+                    block.moveTo(line, column).appendTo(text).append('\n');
+                    writer.append(text);
+                }
+        }
+    }
+
+    private static void writeBinary(Plane plane, Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeInt(plane.getWidth());
+            out.writeInt(plane.getHeight());
+            for (int line = 0; line < plane.getHeight(); line += 8)
+                for (int column = 0; column < plane.getWidth(); column += 8)
+                    for (int i = 0; i < 8; i++)
+                        for (int j = 0; j < 8; j++)
+                            out.writeFloat(plane.get(line + i, column + j));
+        }
+    }
+
+    /**
+     * A dumper writing to directory, or null when it is null or cannot be created.
+     */
+    static BlockDumper create(Path directory, Format format) {
+        if (directory == null)
+            return null;
+        try {
+            return new BlockDumper(directory, format, 6);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // planes queued here are only read from then on, so the dumps are written while the codec carries on
+    static void dump(BlockDumper dumper, Plane plane, String name) {
+        if (dumper != null)
+            dumper.dump(plane, name);
+    }
+
+    static void close(BlockDumper dumper) {
+        if (dumper == null)
+            return;
+        try {
+            dumper.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Waits for every queued dump to be written, and fails if any of them could not be.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            queue.put(END);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing block dumps", e);
+        }
+        if (failure != null)
+            throw new IOException("Failed to write block dumps to " + directory, failure);
+    }
+}
@@ -0,0 +1,52 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs an action for every index in [from, to) on a ForkJoinPool, halving the range until it is at most
+ * grain indices long. An index is a block row of one channel or a restart interval, so every task writes
+ * its own disjoint part of the output and the result does not depend on scheduling.
+ */
+public class BlockRowTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+    private final int grain;
+    private final IntConsumer action;
+
+    public BlockRowTask(int from, int to, int grain, IntConsumer action) {
+        this.from = from;
+        this.to = to;
+        this.grain = Math.max(1, grain);
+        this.action = action;
+    }
+
+    public interface BlockRowAction {
+        void run(int component, int line);
+    }
+
+    /**
+     * Runs action on every block row of the Y, U and V planes, as parallel tasks on pool.
+     */
+    public static void forEachBlockRow(ForkJoinPool pool, Plane[] planes, BlockRowAction action) {
+        int lumaRows = planes[0].getHeight() / 8;
+        int chromaRows = planes[1].getHeight() / 8;
+        pool.invoke(new BlockRowTask(0, lumaRows + 2 * chromaRows, 1, unit -> {
+            if (unit < lumaRows)
+                action.run(0, unit * 8);
+            else
+                action.run(1 + (unit - lumaRows) / chromaRows, (unit - lumaRows) % chromaRows * 8);
+        }));
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= grain) {
+            for (int i = from; i < to; i++) action.accept(i);
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        invokeAll(new BlockRowTask(from, middle, grain, action), new BlockRowTask(middle, to, grain, action));
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * Fixed work buffers for one thread. Every block stage transforms in place through these arrays, so
+ * once a worker has touched its scratch the block path allocates nothing.
+ * <p>
+ * The arrays are only valid inside one stage call; callers must not keep them across calls that may
+ * use the same buffer.
+ */
+final class BlockScratch {
+    private static final ThreadLocal<BlockScratch> SCRATCH = ThreadLocal.withInitial(BlockScratch::new);
+
+    // the block the transform stages run on
+    final double[] block = new double[64];
+    // intermediate pass of the separable DCTs and input copy of the reference DCT
+    final double[] rows = new double[64];
+    // the coefficients a block had in the frame before, for the delta frames of SequenceEncoder
+    final double[] previous = new double[64];
+    // zig-zag ordered coefficients
+    final int[] list = new int[64];
+    // the block in fixed point, for IntegerDCT
+    final int[] integers = new int[64];
+
+    private BlockScratch() {
+    }
+
+    static BlockScratch get() {
+        return SCRATCH.get();
+    }
+}
@@ -0,0 +1,151 @@
+import java.util.Arrays;
+
+/**
+ * The per-block stages of the codec, one block row at a time:
+ * substract128 -> FDCT -> quantization on the way in and
+ * dequantization -> IDCT -> add128 on the way out.
+ * <p>
+ * One instance per quantization table, luma and chroma having their own. Stateless apart from that
+ * configuration, so one instance can serve every worker thread. Blocks are
+ * transformed in place in the calling thread's {@link BlockScratch}.
+ */
+public class BlockTransform {
+    private final DCTEngine dctEngine;
+    private final QuantizationTable quantization;
+    private final double[] quantizers;
+    private final double[] dequantizers;
+
+    public BlockTransform(DCTEngine dctEngine, QuantizationTable quantization) {
+        this.dctEngine = dctEngine;
+        this.quantization = quantization;
+        this.quantizers = dctEngine.quantizers(quantization);
+        this.dequantizers = dctEngine.dequantizers(quantization);
+    }
+
+    public QuantizationTable getQuantization() {
+        return quantization;
+    }
+
+    /**
+     * Encodes the block row of samples starting at line into the same position of coefficients.
+     */
+    public void forwardRow(Plane samples, Plane coefficients, int line) {
+        double[] block = BlockScratch.get().block;
+        try (Metrics.Span span = Metrics.start(Metrics.Stage.FORWARD_TRANSFORM)) {
+            span.units(samples.getWidth() / 8);
+            for (int column = 0; column < samples.getWidth(); column += 8) {
+                samples.read(line, column, 8, block);
+                substract128(block);
+                dctEngine.forwardQuantized(block, quantizers);
+                coefficients.write(line, column, 8, block);
+            }
+        }
+    }
+
+    /**
+     * Like {@link #forwardRow} for a frame following the one whose samples are in previous and whose
+     * coefficients are still in coefficients. Blocks with the same samples as before are not transformed
+     * again; they and the blocks whose coefficients come out the same are marked in unchanged, which has one
+     * entry per block of the plane in raster order.
+     */
+    public void forwardRow(Plane samples, Plane previous, Plane coefficients, int line, boolean[] unchanged) {
+        BlockScratch scratch = BlockScratch.get();
+        double[] block = scratch.block;
+        double[] before = scratch.previous;
+        int first = line / 8 * (samples.getWidth() / 8);
+        try (Metrics.Span span = Metrics.start(Metrics.Stage.FORWARD_TRANSFORM)) {
+            span.units(samples.getWidth() / 8);
+            // most rows of a still scene did not change at all
+            if (samples.sameSamples(previous, line, 0, samples.getWidth(), 8)) {
+                Arrays.fill(unchanged, first, first + samples.getWidth() / 8, true);
+                return;
+            }
+            for (int column = 0; column < samples.getWidth(); column += 8) {
+                if (samples.sameSamples(previous, line, column, 8, 8)) {
+                    unchanged[first + column / 8] = true;
+                    continue;
+                }
+                samples.read(line, column, 8, block);
+                substract128(block);
+                dctEngine.forwardQuantized(block, quantizers);
+                coefficients.read(line, column, 8, before);
+                unchanged[first + column / 8] = Arrays.equals(block, before);
+                coefficients.write(line, column, 8, block);
+            }
+        }
+    }
+
+    /**
+     * Decodes the block row of coefficients starting at line into the same position of samples.
+     */
+    public void inverseRow(Plane coefficients, Plane samples, int line) {
+        inverseRow(coefficients, samples, line, null);
+    }
+
+    /**
+     * Like {@link #inverseRow(Plane, Plane, int)}, with the end of every block of coefficients as stored by
+     * {@link PayloadDecoder#decode(java.util.concurrent.ForkJoinPool, Plane[], byte[][])}; null when unknown.
+     * Blocks with end 0, left as they were by a delta frame, are left as they are in samples too.
+     */
+    public void inverseRow(Plane coefficients, Plane samples, int line, byte[] ends) {
+        double[] block = BlockScratch.get().block;
+        int blocksPerRow = coefficients.getWidth() / 8;
+        int first = line / 8 * blocksPerRow;
+        try (Metrics.Span span = Metrics.start(Metrics.Stage.INVERSE_TRANSFORM)) {
+            span.units(blocksPerRow);
+            for (int column = 0; column < coefficients.getWidth(); column += 8) {
+                int end = ends == null ? 64 : ends[first + column / 8];
+                if (end == 0)
+                    continue;
+                coefficients.read(line, column, 8, block);
+                inverseBlock(block, 1, end);
+                samples.write(line, column, 8, block);
+            }
+        }
+    }
+
+    /**
+     * Dequantizes and reconstructs one block of quantized coefficients in place.
+     */
+    public void inverseBlock(double[] block) {
+        dctEngine.inverseDequantized(block, dequantizers);
+        add128(block);
+    }
+
+    /**
+     * {@link #inverseBlock(double[], int)} for a block whose coefficients are zero from the end-th on in
+     * zig-zag order, which at scale 1 lets the engine skip them.
+     */
+    public void inverseBlock(double[] block, int scale, int end) {
+        if (scale != 1) {
+            inverseBlock(block, scale);
+            return;
+        }
+        dctEngine.inverseDequantized(block, dequantizers, end);
+        add128(block);
+    }
+
+    /**
+     * Reconstructs one block at 1/scale of its size, scale being 1, 2, 4 or 8. The 8 / scale square of
+     * samples ends up row-major at the start of block. Only the coefficients the scale keeps are dequantized.
+     */
+    public void inverseBlock(double[] block, int scale) {
+        if (scale == 1) {
+            inverseBlock(block);
+            return;
+        }
+        int size = 8 / scale;
+        for (int i = 0; i < size; i++)
+            for (int j = 0; j < size; j++) block[i * 8 + j] *= quantization.getDivisor(i * 8 + j);
+        ScaledIDCT.inverse(block, size);
+        for (int i = 0; i < size * size; i++) block[i] += 128.0;
+    }
+
+    private void substract128(double[] block) {
+        for (int i = 0; i < 64; i++) block[i] -= 128.0;
+    }
+
+    private void add128(double[] block) {
+        for (int i = 0; i < 64; i++) block[i] += 128.0;
+    }
+}
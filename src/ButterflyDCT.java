@@ -0,0 +1,219 @@
+import java.util.Arrays;
+
+/**
+ * Arai-Agui-Nakajima butterfly DCT (the float variant used by libjpeg): 5 multiplications per 8-point pass.
+ * <p>
+ * The butterflies leave every coefficient scaled by {@code 8 * S(u) * S(v)} where {@code S(0) = 1} and
+ * {@code S(k) = sqrt(2) * cos(k * PI / 16)}. That scale is merged into the quantizers and dequantizers,
+ * so the quantized path costs no extra pass over the block.
+ */
+public class ButterflyDCT implements DCTEngine {
+    private static final double[] SCALE = new double[64];
+
+    static {
+        double[] s = new double[8];
+        s[0] = 1.0;
+        for (int k = 1; k < 8; k++) s[k] = Math.sqrt(2.0) * Math.cos(k * Math.PI / 16);
+        for (int u = 0; u < 8; u++)
+            for (int v = 0; v < 8; v++) SCALE[u * 8 + v] = s[u] * s[v];
+    }
+
+    @Override
+    public void forwardDCT(double[] block) {
+        forwardButterflies(block);
+        for (int i = 0; i < 64; i++) block[i] /= 8 * SCALE[i];
+    }
+
+    @Override
+    public double[] quantizers(QuantizationTable table) {
+        double[] quantizers = new double[64];
+        for (int i = 0; i < 64; i++) quantizers[i] = 1.0 / (8 * SCALE[i] * table.getDivisor(i));
+        return quantizers;
+    }
+
+    @Override
+    public double[] dequantizers(QuantizationTable table) {
+        double[] dequantizers = new double[64];
+        for (int i = 0; i < 64; i++) dequantizers[i] = table.getDivisor(i) * SCALE[i];
+        return dequantizers;
+    }
+
+    @Override
+    public void forwardQuantized(double[] block, double[] quantizers) {
+        forwardButterflies(block);
+        for (int i = 0; i < 64; i++) block[i] = Math.rint(block[i] * quantizers[i]);
+    }
+
+    @Override
+    public void inverseDCT(double[] block) {
+        for (int i = 0; i < 64; i++) block[i] *= SCALE[i];
+        inverseButterflies(block);
+    }
+
+    @Override
+    public void inverseDequantized(double[] block, double[] dequantizers) {
+        for (int i = 0; i < 64; i++) block[i] *= dequantizers[i];
+        inverseButterflies(block);
+    }
+
+    @Override
+    public void inverseDequantized(double[] block, double[] dequantizers, int end) {
+        if (end == 1) {
+            // a lone DC passes through the butterflies unchanged
+            Arrays.fill(block, (int) (block[0] * dequantizers[0] / 8));
+            return;
+        }
+        if (end > LOW_FREQUENCY_END) {
+            inverseDequantized(block, dequantizers);
+            return;
+        }
+        for (int row = 0; row < 32; row += 8)
+            for (int i = row; i < row + 4; i++) block[i] *= dequantizers[i];
+        // columns 4 to 7 are zero and stay zero
+        for (int column = 0; column < 4; column++) inverseLowPass(block, column, 8);
+        for (int row = 0; row < 64; row += 8) inverseLowPass(block, row, 1);
+        for (int i = 0; i < 64; i++) block[i] = (int) (block[i] / 8);
+    }
+
+    private void forwardButterflies(double[] data) {
+        for (int row = 0; row < 64; row += 8) forwardPass(data, row, 1);
+        for (int column = 0; column < 8; column++) forwardPass(data, column, 8);
+    }
+
+    private void forwardPass(double[] data, int offset, int step) {
+        int p0 = offset, p1 = p0 + step, p2 = p1 + step, p3 = p2 + step;
+        int p4 = p3 + step, p5 = p4 + step, p6 = p5 + step, p7 = p6 + step;
+
+        double tmp0 = data[p0] + data[p7];
+        double tmp7 = data[p0] - data[p7];
+        double tmp1 = data[p1] + data[p6];
+        double tmp6 = data[p1] - data[p6];
+        double tmp2 = data[p2] + data[p5];
+        double tmp5 = data[p2] - data[p5];
+        double tmp3 = data[p3] + data[p4];
+        double tmp4 = data[p3] - data[p4];
+
+        double tmp10 = tmp0 + tmp3;
+        double tmp13 = tmp0 - tmp3;
+        double tmp11 = tmp1 + tmp2;
+        double tmp12 = tmp1 - tmp2;
+
+        data[p0] = tmp10 + tmp11;
+        data[p4] = tmp10 - tmp11;
+
+        double z1 = (tmp12 + tmp13) * 0.707106781186547524;
+        data[p2] = tmp13 + z1;
+        data[p6] = tmp13 - z1;
+
+        tmp10 = tmp4 + tmp5;
+        tmp11 = tmp5 + tmp6;
+        tmp12 = tmp6 + tmp7;
+
+        double z5 = (tmp10 - tmp12) * 0.382683432365089772;
+        double z2 = 0.541196100146196984 * tmp10 + z5;
+        double z4 = 1.306562964876376527 * tmp12 + z5;
+        double z3 = tmp11 * 0.707106781186547524;
+
+        double z11 = tmp7 + z3;
+        double z13 = tmp7 - z3;
+
+        data[p5] = z13 + z2;
+        data[p3] = z13 - z2;
+        data[p1] = z11 + z4;
+        data[p7] = z11 - z4;
+    }
+
+    private void inverseButterflies(double[] data) {
+        for (int column = 0; column < 8; column++) inversePass(data, column, 8);
+        for (int row = 0; row < 64; row += 8) inversePass(data, row, 1);
+        for (int i = 0; i < 64; i++) data[i] = (int) (data[i] / 8);
+    }
+
+    private void inversePass(double[] data, int offset, int step) {
+        int p0 = offset, p1 = p0 + step, p2 = p1 + step, p3 = p2 + step;
+        int p4 = p3 + step, p5 = p4 + step, p6 = p5 + step, p7 = p6 + step;
+
+        double tmp0 = data[p0];
+        double tmp1 = data[p2];
+        double tmp2 = data[p4];
+        double tmp3 = data[p6];
+
+        double tmp10 = tmp0 + tmp2;
+        double tmp11 = tmp0 - tmp2;
+        double tmp13 = tmp1 + tmp3;
+        double tmp12 = (tmp1 - tmp3) * 1.414213562373095049 - tmp13;
+
+        tmp0 = tmp10 + tmp13;
+        tmp3 = tmp10 - tmp13;
+        tmp1 = tmp11 + tmp12;
+        tmp2 = tmp11 - tmp12;
+
+        double tmp4 = data[p1];
+        double tmp5 = data[p3];
+        double tmp6 = data[p5];
+        double tmp7 = data[p7];
+
+        double z13 = tmp6 + tmp5;
+        double z10 = tmp6 - tmp5;
+        double z11 = tmp4 + tmp7;
+        double z12 = tmp4 - tmp7;
+
+        tmp7 = z11 + z13;
+        tmp11 = (z11 - z13) * 1.414213562373095049;
+
+        double z5 = (z10 + z12) * 1.847759065022573512;
+        tmp10 = 1.082392200292393968 * z12 - z5;
+        tmp12 = -2.613125929752753055 * z10 + z5;
+
+        tmp6 = tmp12 - tmp7;
+        tmp5 = tmp11 - tmp6;
+        tmp4 = tmp10 + tmp5;
+
+        data[p0] = tmp0 + tmp7;
+        data[p7] = tmp0 - tmp7;
+        data[p1] = tmp1 + tmp6;
+        data[p6] = tmp1 - tmp6;
+        data[p2] = tmp2 + tmp5;
+        data[p5] = tmp2 - tmp5;
+        data[p4] = tmp3 + tmp4;
+        data[p3] = tmp3 - tmp4;
+    }
+
+    // inversePass for inputs 4 to 7 all zero, with the terms they contribute dropped; the result is the same
+    private void inverseLowPass(double[] data, int offset, int step) {
+        int p0 = offset, p1 = p0 + step, p2 = p1 + step, p3 = p2 + step;
+        int p4 = p3 + step, p5 = p4 + step, p6 = p5 + step, p7 = p6 + step;
+
+        double tmp0 = data[p0];
+        double tmp13 = data[p2];
+        double tmp12 = tmp13 * 1.414213562373095049 - tmp13;
+
+        double tmp1 = tmp0 + tmp12;
+        double tmp2 = tmp0 - tmp12;
+        double tmp3 = tmp0 - tmp13;
+        tmp0 = tmp0 + tmp13;
+
+        double z11 = data[p1];
+        double z13 = data[p3];
+
+        double tmp7 = z11 + z13;
+        double tmp11 = (z11 - z13) * 1.414213562373095049;
+
+        double z5 = (z11 - z13) * 1.847759065022573512;
+        double tmp10 = 1.082392200292393968 * z11 - z5;
+        tmp12 = 2.613125929752753055 * z13 + z5;
+
+        double tmp6 = tmp12 - tmp7;
+        double tmp5 = tmp11 - tmp6;
+        double tmp4 = tmp10 + tmp5;
+
+        data[p0] = tmp0 + tmp7;
+        data[p7] = tmp0 - tmp7;
+        data[p1] = tmp1 + tmp6;
+        data[p6] = tmp1 - tmp6;
+        data[p2] = tmp2 + tmp5;
+        data[p5] = tmp2 - tmp5;
+        data[p4] = tmp3 + tmp4;
+        data[p3] = tmp3 - tmp4;
+    }
+}
@@ -0,0 +1,129 @@
+import java.util.Arrays;
+
+/**
+ * How the U and V planes are sampled relative to Y, and with it the MCU layout of the payload.
+ * <p>
+ * Chroma is decimated at plane level, by averaging every horizontal x vertical cell of samples, and the
+ * decimated planes are cut into ordinary 8x8 blocks. An MCU covers one chroma block: its luma blocks in
+ * raster order followed by one U and one V block, so 4:2:0 codes 6 blocks per 16x16 pixels instead of 12.
+ */
+public enum ChromaMode {
+    YUV444(0, 1, 1),
+    YUV422(1, 2, 1),
+    YUV420(2, 2, 2);
+
+    private final int code;
+    private final int horizontal;
+    private final int vertical;
+
+    ChromaMode(int code, int horizontal, int vertical) {
+        this.code = code;
+        this.horizontal = horizontal;
+        this.vertical = vertical;
+    }
+
+    /**
+     * The value stored in the .yuvj header.
+     */
+    public int getCode() {
+        return code;
+    }
+
+    public static ChromaMode fromCode(int code) {
+        for (ChromaMode mode : values())
+            if (mode.code == code)
+                return mode;
+        throw new IllegalArgumentException("Unknown chroma mode " + code);
+    }
+
+    /**
+     * Luma samples per chroma sample across a line.
+     */
+    public int getHorizontal() {
+        return horizontal;
+    }
+
+    /**
+     * Luma samples per chroma sample down a column.
+     */
+    public int getVertical() {
+        return vertical;
+    }
+
+    public int getMcuWidth() {
+        return 8 * horizontal;
+    }
+
+    public int getMcuHeight() {
+        return 8 * vertical;
+    }
+
+    /**
+     * MCUs across an image of the given width, the last one padded.
+     */
+    public int getMcusPerRow(int width) {
+        return (width + getMcuWidth() - 1) / getMcuWidth();
+    }
+
+    public int getMcuRows(int height) {
+        return (height + getMcuHeight() - 1) / getMcuHeight();
+    }
+
+    public int getLumaBlocks() {
+        return horizontal * vertical;
+    }
+
+    public int getBlocksPerMcu() {
+        return horizontal * vertical + 2;
+    }
+
+    /**
+     * Averages the cells of source into the first lines lines of target. Cells reaching past the right or
+     * bottom edge of source repeat its last column and line, so target may cover a padded source.
+     */
+    public void downsample(Plane source, Plane target, int lines) {
+        float[] row = new float[source.getWidth()];
+        float[] sum = new float[target.getWidth()];
+        int last = source.getWidth() - 1;
+        // the cells that lie wholly inside the source row, which need no clamping
+        int inside = Math.min(sum.length, source.getWidth() / horizontal);
+        float scale = 1f / (horizontal * vertical);
+        try (Metrics.Span span = Metrics.start(Metrics.Stage.SUBSAMPLE)) {
+            span.units((long) lines * sum.length);
+            for (int line = 0; line < lines; line++) {
+                Arrays.fill(sum, 0f);
+                for (int k = 0; k < vertical; k++) {
+                    source.readRow(Math.min(line * vertical + k, source.getHeight() - 1), row);
+                    // adding in the same order as the loop below, which gives the same sums
+                    if (horizontal == 2)
+                        for (int column = 0; column < inside; column++) sum[column] = sum[column] + row[2 * column] + row[2 * column + 1];
+                    else
+                        for (int column = 0; column < inside; column++) sum[column] += row[column];
+                    for (int column = inside, x = inside * horizontal; column < sum.length; column++)
+                        for (int j = 0; j < horizontal; j++, x++) sum[column] += row[Math.min(x, last)];
+                }
+                for (int column = 0; column < sum.length; column++) sum[column] *= scale;
+                target.writeRow(line, sum);
+            }
+        }
+    }
+
+    /**
+     * Fills the first lines lines of target by repeating every sample of source over its cell. Target may
+     * be smaller than the cells cover, for cropping the padding away.
+     */
+    public void upsample(Plane source, Plane target, int lines) {
+        float[] row = new float[source.getWidth()];
+        float[] wide = new float[target.getWidth()];
+        try (Metrics.Span span = Metrics.start(Metrics.Stage.UPSAMPLE)) {
+            span.units((long) lines * wide.length);
+            for (int line = 0; line < lines; line++) {
+                if (line % vertical == 0) {
+                    source.readRow(line / vertical, row);
+                    for (int column = 0; column < wide.length; column++) wide[column] = row[column / horizontal];
+                }
+                target.writeRow(line, wide);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Options for {@link Encoder}, {@link Decoder} and the other codecs.
+ */
+public class CodecSettings {
+    private DCTEngine dctEngine = new ButterflyDCT();
+    private boolean optimizedHuffman = true;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private int restartInterval = 64;
+    private ChromaMode chromaMode = ChromaMode.YUV420;
+    private int quality = 80;
+    private int keyFrameInterval = 30;
+    private TileCache tileCache;
+    private Path blockDumpDirectory;
+    private BlockDumper.Format blockDumpFormat = BlockDumper.Format.TEXT;
+
+    public DCTEngine getDctEngine() {
+        return dctEngine;
+    }
+
+    public void setDctEngine(DCTEngine dctEngine) {
+        this.dctEngine = dctEngine;
+    }
+
+    /**
+     * Storage for sample planes: 8 bit with a fixed-point engine such as {@link IntegerDCT}, float otherwise.
+     */
+    public Plane.Storage getSampleStorage() {
+        return dctEngine.isFixedPoint() ? Plane.Storage.BYTE : Plane.Storage.HEAP;
+    }
+
+    /**
+     * Storage for coefficient planes: 16 bit with a fixed-point engine, float otherwise.
+     */
+    public Plane.Storage getCoefficientStorage() {
+        return dctEngine.isFixedPoint() ? Plane.Storage.SHORT : Plane.Storage.HEAP;
+    }
+
+    /**
+     * When true the Huffman tables are built from this image's symbol histogram, otherwise the
+     * standard JPEG tables are used and the histogram pass is skipped.
+     */
+    public boolean isOptimizedHuffman() {
+        return optimizedHuffman;
+    }
+
+    public void setOptimizedHuffman(boolean optimizedHuffman) {
+        this.optimizedHuffman = optimizedHuffman;
+    }
+
+    /**
+     * Pool the block transforms run on. A pool of parallelism 1 gives serial execution.
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * MCUs between restarts. Each restart interval starts on a byte boundary with fresh DC prediction,
+     * so intervals can be decoded independently and in parallel. 0 codes the whole image as one interval.
+     */
+    public int getRestartInterval() {
+        return restartInterval;
+    }
+
+    public void setRestartInterval(int restartInterval) {
+        if (restartInterval < 0 || restartInterval > 0xffff)
+            throw new IllegalArgumentException("Restart interval out of range: " + restartInterval);
+        this.restartInterval = restartInterval;
+    }
+
+    /**
+     * Resolution of the U and V planes relative to Y, 4:2:0 unless set.
+     */
+    public ChromaMode getChromaMode() {
+        return chromaMode;
+    }
+
+    public void setChromaMode(ChromaMode chromaMode) {
+        this.chromaMode = chromaMode;
+    }
+
+    /**
+     * 1-100, scales the standard luma and chroma quantization tables: lower gives smaller files,
+     * higher gives better fidelity.
+     */
+    public int getQuality() {
+        return quality;
+    }
+
+    public void setQuality(int quality) {
+        if (quality < 1 || quality > 100)
+            throw new IllegalArgumentException("Quality must be 1..100: " + quality);
+        this.quality = quality;
+    }
+
+    /**
+     * The luma table followed by the chroma table for the quality.
+     */
+    public QuantizationTable[] getQuantizationTables() {
+        return new QuantizationTable[]{QuantizationTable.luminance(quality), QuantizationTable.chrominance(quality)};
+    }
+
+    /**
+     * Frames from one key frame of a {@link SequenceEncoder} to the next. Key frames are coded whole, so a
+     * sequence can be decoded from any of them; 0 makes the first frame the only one.
+     */
+    public int getKeyFrameInterval() {
+        return keyFrameInterval;
+    }
+
+    public void setKeyFrameInterval(int keyFrameInterval) {
+        if (keyFrameInterval < 0)
+            throw new IllegalArgumentException("Key frame interval must not be negative: " + keyFrameInterval);
+        this.keyFrameInterval = keyFrameInterval;
+    }
+
+    /**
+     * Decoded MCUs {@link RegionDecoder} keeps for later regions of the same image, or null, the default, for
+     * no cache. Share one cache between the decoders of a viewer to bound the memory of all of them together.
+     */
+    public TileCache getTileCache() {
+        return tileCache;
+    }
+
+    public void setTileCache(TileCache tileCache) {
+        this.tileCache = tileCache;
+    }
+
+    /**
+     * Where {@link Encoder} and {@link Decoder} dump the blocks of every stage, or null, the default, for no dumps.
+     */
+    public Path getBlockDumpDirectory() {
+        return blockDumpDirectory;
+    }
+
+    public void setBlockDumpDirectory(Path blockDumpDirectory) {
+        this.blockDumpDirectory = blockDumpDirectory;
+    }
+
+    public BlockDumper.Format getBlockDumpFormat() {
+        return blockDumpFormat;
+    }
+
+    public void setBlockDumpFormat(BlockDumper.Format blockDumpFormat) {
+        this.blockDumpFormat = blockDumpFormat;
+    }
+}
@@ -0,0 +1,247 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * RGB <-> YCbCr conversion with the JFIF (full range BT.601) matrices, a row at a time.
+ * <p>
+ * Rows are copied out of the planes into float arrays and converted by straight-line loops over them:
+ * multiply-adds and a min/max clamp, with no branches, calls or int conversions per sample. C2 compiles
+ * these loops to SIMD code where the CPU has it and to plain scalar code where it does not, so the same
+ * kernel is both the fast path and the fallback. Larger images are converted a band of rows per task.
+ * <p>
+ * RGB output is clamped to 0..255 but not truncated; {@link PPMWriter} truncates when it writes the file.
+ * <p>
+ * When every plane has integer storage the conversion runs in 16 bit fixed point on int rows instead, with
+ * libjpeg's constants and rounding, so its results are exact integers that do not depend on the platform.
+ */
+public final class ColorConverter {
+    private static final float Y_R = 0.299f, Y_G = 0.587f, Y_B = 0.114f;
+    private static final float CB_R = -0.168736f, CB_G = -0.331264f, CB_B = 0.5f;
+    private static final float CR_R = 0.5f, CR_G = -0.418688f, CR_B = -0.081312f;
+    private static final float R_CR = 1.402f, G_CB = -0.344136f, G_CR = -0.714136f, B_CB = 1.772f;
+
+    private static final int SCALE_BITS = 16;
+    private static final int HALF = 1 << (SCALE_BITS - 1);
+    private static final int CHROMA_OFFSET = 128 << SCALE_BITS;
+    private static final int FIX_Y_R = fix(0.299), FIX_Y_G = fix(0.587), FIX_Y_B = fix(0.114);
+    private static final int FIX_CB_R = fix(0.168736), FIX_CB_G = fix(0.331264), FIX_C_HALF = fix(0.5);
+    private static final int FIX_CR_G = fix(0.418688), FIX_CR_B = fix(0.081312);
+    private static final int FIX_R_CR = fix(1.402), FIX_G_CB = fix(0.344136), FIX_G_CR = fix(0.714136), FIX_B_CB = fix(1.772);
+
+    private static final int ROWS_PER_TASK = 16;
+    private static final ThreadLocal<float[][]> ROWS = ThreadLocal.withInitial(() -> new float[6][0]);
+    private static final ThreadLocal<int[][]> INTEGER_ROWS = ThreadLocal.withInitial(() -> new int[6][0]);
+
+    private ColorConverter() {
+    }
+
+    public static void rgbToYuv(Plane r, Plane g, Plane b, Plane y, Plane u, Plane v, int lines) {
+        try (Metrics.Span span = Metrics.start(Metrics.Stage.COLOR_CONVERT)) {
+            span.units((long) lines * r.getWidth());
+            boolean fixed = isInteger(r, g, b, y, u, v);
+            for (int line = 0; line < lines; line++)
+                if (fixed)
+                    rgbToYuvFixedLine(r, g, b, y, u, v, line);
+                else
+                    rgbToYuvLine(r, g, b, y, u, v, line);
+        }
+    }
+
+    /**
+     * Converts the first lines rows, bands of rows running as parallel tasks on pool.
+     */
+    public static void rgbToYuv(ForkJoinPool pool, Plane r, Plane g, Plane b, Plane y, Plane u, Plane v, int lines) {
+        try (Metrics.Span span = Metrics.start(Metrics.Stage.COLOR_CONVERT)) {
+            span.units((long) lines * r.getWidth());
+            if (isInteger(r, g, b, y, u, v))
+                pool.invoke(new BlockRowTask(0, lines, ROWS_PER_TASK, line -> rgbToYuvFixedLine(r, g, b, y, u, v, line)));
+            else
+                pool.invoke(new BlockRowTask(0, lines, ROWS_PER_TASK, line -> rgbToYuvLine(r, g, b, y, u, v, line)));
+        }
+    }
+
+    public static void yuvToRgb(Plane y, Plane u, Plane v, Plane r, Plane g, Plane b, int lines) {
+        try (Metrics.Span span = Metrics.start(Metrics.Stage.COLOR_CONVERT)) {
+            span.units((long) lines * r.getWidth());
+            boolean fixed = isInteger(y, u, v, r, g, b);
+            for (int line = 0; line < lines; line++)
+                if (fixed)
+                    yuvToRgbFixedLine(y, u, v, r, g, b, line);
+                else
+                    yuvToRgbLine(y, u, v, r, g, b, line);
+        }
+    }
+
+    /**
+     * Converts the first lines rows, bands of rows running as parallel tasks on pool.
+     */
+    public static void yuvToRgb(ForkJoinPool pool, Plane y, Plane u, Plane v, Plane r, Plane g, Plane b, int lines) {
+        try (Metrics.Span span = Metrics.start(Metrics.Stage.COLOR_CONVERT)) {
+            span.units((long) lines * r.getWidth());
+            if (isInteger(y, u, v, r, g, b))
+                pool.invoke(new BlockRowTask(0, lines, ROWS_PER_TASK, line -> yuvToRgbFixedLine(y, u, v, r, g, b, line)));
+            else
+                pool.invoke(new BlockRowTask(0, lines, ROWS_PER_TASK, line -> yuvToRgbLine(y, u, v, r, g, b, line)));
+        }
+    }
+
+    /**
+     * Converts line of y, with u and v holding chroma at 1/horizontal of its width, into width pixels of
+     * packed R, G, B bytes from offset of rgb: the samples {@link #yuvToRgb(Plane, Plane, Plane, Plane, Plane, Plane, int)}
+     * would give, truncated as {@link PPMWriter} writes them. Integer planes convert in fixed point.
+     */
+    static void yuvToPackedRgb(Plane y, Plane u, Plane v, int line, int chromaLine, int horizontal, byte[] rgb, int offset, int width) {
+        if (isInteger(y, u, v)) {
+            int[][] rows = integerRows(Math.max(y.getWidth(), u.getWidth()));
+            y.readRow(line, rows[0]);
+            widen(u, chromaLine, horizontal, rows[3], rows[1], width);
+            widen(v, chromaLine, horizontal, rows[3], rows[2], width);
+            yuvToRgb(rows[0], rows[1], rows[2], rows[3], rows[4], rows[5], width);
+            pack(rows[3], rows[4], rows[5], rgb, offset, width);
+        } else {
+            float[][] rows = rows(Math.max(y.getWidth(), u.getWidth()));
+            y.readRow(line, rows[0]);
+            widen(u, chromaLine, horizontal, rows[3], rows[1], width);
+            widen(v, chromaLine, horizontal, rows[3], rows[2], width);
+            yuvToRgb(rows[0], rows[1], rows[2], rows[3], rows[4], rows[5], width);
+            pack(rows[3], rows[4], rows[5], rgb, offset, width);
+        }
+    }
+
+    // reads line of plane into row, repeating every sample horizontal times as ChromaMode.upsample does
+    private static void widen(Plane plane, int line, int horizontal, int[] narrow, int[] row, int width) {
+        if (horizontal == 1) {
+            plane.readRow(line, row);
+            return;
+        }
+        plane.readRow(line, narrow);
+        for (int i = 0; i < width; i++) row[i] = narrow[i / horizontal];
+    }
+
+    private static void widen(Plane plane, int line, int horizontal, float[] narrow, float[] row, int width) {
+        if (horizontal == 1) {
+            plane.readRow(line, row);
+            return;
+        }
+        plane.readRow(line, narrow);
+        for (int i = 0; i < width; i++) row[i] = narrow[i / horizontal];
+    }
+
+    private static void pack(int[] r, int[] g, int[] b, byte[] rgb, int offset, int width) {
+        for (int i = 0, p = offset; i < width; i++, p += 3) {
+            rgb[p] = (byte) r[i];
+            rgb[p + 1] = (byte) g[i];
+            rgb[p + 2] = (byte) b[i];
+        }
+    }
+
+    // the samples are already clamped to 0..255, so truncating is all PPMWriter would do
+    private static void pack(float[] r, float[] g, float[] b, byte[] rgb, int offset, int width) {
+        for (int i = 0, p = offset; i < width; i++, p += 3) {
+            rgb[p] = (byte) (int) r[i];
+            rgb[p + 1] = (byte) (int) g[i];
+            rgb[p + 2] = (byte) (int) b[i];
+        }
+    }
+
+    private static int fix(double value) {
+        return (int) (value * (1 << SCALE_BITS) + 0.5);
+    }
+
+    private static boolean isInteger(Plane... planes) {
+        for (Plane plane : planes)
+            if (!plane.getStorage().isInteger())
+                return false;
+        return true;
+    }
+
+    private static void rgbToYuvLine(Plane r, Plane g, Plane b, Plane y, Plane u, Plane v, int line) {
+        float[][] rows = rows(r.getWidth());
+        r.readRow(line, rows[0]);
+        g.readRow(line, rows[1]);
+        b.readRow(line, rows[2]);
+        rgbToYuv(rows[0], rows[1], rows[2], rows[3], rows[4], rows[5], r.getWidth());
+        y.writeRow(line, rows[3]);
+        u.writeRow(line, rows[4]);
+        v.writeRow(line, rows[5]);
+    }
+
+    private static void yuvToRgbLine(Plane y, Plane u, Plane v, Plane r, Plane g, Plane b, int line) {
+        float[][] rows = rows(r.getWidth());
+        y.readRow(line, rows[0]);
+        u.readRow(line, rows[1]);
+        v.readRow(line, rows[2]);
+        yuvToRgb(rows[0], rows[1], rows[2], rows[3], rows[4], rows[5], r.getWidth());
+        r.writeRow(line, rows[3]);
+        g.writeRow(line, rows[4]);
+        b.writeRow(line, rows[5]);
+    }
+
+    private static void rgbToYuvFixedLine(Plane r, Plane g, Plane b, Plane y, Plane u, Plane v, int line) {
+        int[][] rows = integerRows(r.getWidth());
+        r.readRow(line, rows[0]);
+        g.readRow(line, rows[1]);
+        b.readRow(line, rows[2]);
+        rgbToYuv(rows[0], rows[1], rows[2], rows[3], rows[4], rows[5], r.getWidth());
+        y.writeRow(line, rows[3]);
+        u.writeRow(line, rows[4]);
+        v.writeRow(line, rows[5]);
+    }
+
+    private static void yuvToRgbFixedLine(Plane y, Plane u, Plane v, Plane r, Plane g, Plane b, int line) {
+        int[][] rows = integerRows(r.getWidth());
+        y.readRow(line, rows[0]);
+        u.readRow(line, rows[1]);
+        v.readRow(line, rows[2]);
+        yuvToRgb(rows[0], rows[1], rows[2], rows[3], rows[4], rows[5], r.getWidth());
+        r.writeRow(line, rows[3]);
+        g.writeRow(line, rows[4]);
+        b.writeRow(line, rows[5]);
+    }
+
+    // one loop per output plane: C2 vectorizes a loop with a single store stream, not one with three
+    static void rgbToYuv(float[] r, float[] g, float[] b, float[] y, float[] u, float[] v, int width) {
+        for (int i = 0; i < width; i++) y[i] = Y_R * r[i] + Y_G * g[i] + Y_B * b[i];
+        for (int i = 0; i < width; i++) u[i] = CB_R * r[i] + CB_G * g[i] + CB_B * b[i] + 128f;
+        for (int i = 0; i < width; i++) v[i] = CR_R * r[i] + CR_G * g[i] + CR_B * b[i] + 128f;
+    }
+
+    static void yuvToRgb(float[] y, float[] u, float[] v, float[] r, float[] g, float[] b, int width) {
+        for (int i = 0; i < width; i++) r[i] = Math.min(255f, Math.max(0f, y[i] + R_CR * (v[i] - 128f)));
+        for (int i = 0; i < width; i++) g[i] = Math.min(255f, Math.max(0f, y[i] + G_CB * (u[i] - 128f) + G_CR * (v[i] - 128f)));
+        for (int i = 0; i < width; i++) b[i] = Math.min(255f, Math.max(0f, y[i] + B_CB * (u[i] - 128f)));
+    }
+
+    // jccolor: chroma rounds half down, hence HALF - 1
+    static void rgbToYuv(int[] r, int[] g, int[] b, int[] y, int[] u, int[] v, int width) {
+        for (int i = 0; i < width; i++) y[i] = FIX_Y_R * r[i] + FIX_Y_G * g[i] + FIX_Y_B * b[i] + HALF >> SCALE_BITS;
+        for (int i = 0; i < width; i++) u[i] = -FIX_CB_R * r[i] - FIX_CB_G * g[i] + FIX_C_HALF * b[i] + CHROMA_OFFSET + HALF - 1 >> SCALE_BITS;
+        for (int i = 0; i < width; i++) v[i] = FIX_C_HALF * r[i] - FIX_CR_G * g[i] - FIX_CR_B * b[i] + CHROMA_OFFSET + HALF - 1 >> SCALE_BITS;
+    }
+
+    // jdcolor
+    static void yuvToRgb(int[] y, int[] u, int[] v, int[] r, int[] g, int[] b, int width) {
+        for (int i = 0; i < width; i++) r[i] = clamp(y[i] + (FIX_R_CR * (v[i] - 128) + HALF >> SCALE_BITS));
+        for (int i = 0; i < width; i++) g[i] = clamp(y[i] + (-FIX_G_CB * (u[i] - 128) - FIX_G_CR * (v[i] - 128) + HALF >> SCALE_BITS));
+        for (int i = 0; i < width; i++) b[i] = clamp(y[i] + (FIX_B_CB * (u[i] - 128) + HALF >> SCALE_BITS));
+    }
+
+    // to 0..255 with shifts and masks: C2 does not vectorize Math.min and Math.max on ints
+    private static int clamp(int value) {
+        value &= ~(value >> 31);
+        return (value | 255 - value >> 31) & 255;
+    }
+
+    private static int[][] integerRows(int width) {
+        int[][] rows = INTEGER_ROWS.get();
+        if (rows[0].length < width)
+            for (int i = 0; i < rows.length; i++) rows[i] = new int[width];
+        return rows;
+    }
+
+    private static float[][] rows(int width) {
+        float[][] rows = ROWS.get();
+        if (rows[0].length < width)
+            for (int i = 0; i < rows.length; i++) rows[i] = new float[width];
+        return rows;
+    }
+}
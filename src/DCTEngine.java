@@ -0,0 +1,76 @@
+/**
+ * 8x8 forward and inverse DCT used by {@link BlockTransform}. Blocks are row-major double[64] and are
+ * transformed in place.
+ * <p>
+ * Every floating-point engine must produce the same coefficients as {@link ReferenceDCT} within
+ * {@link #TOLERANCE} before quantization. Quantized values are rounded and reconstructed values truncated
+ * to int, so a result that sits exactly on a boundary may differ from the reference by one.
+ * {@link IntegerDCT} rounds at every step instead and stays within one of the reference.
+ * <p>
+ * The quantized paths take per-coefficient multipliers from {@link #quantizers} and {@link #dequantizers},
+ * computed once per table, so an engine whose raw output carries a scale can fold it into them.
+ */
+public interface DCTEngine {
+    // the first 10 coefficients in zig-zag order all lie in the top left 4x4 corner of the block
+    int LOW_FREQUENCY_END = 10;
+    double TOLERANCE = 1e-9;
+
+    void forwardDCT(double[] block);
+
+    /**
+     * Whether the engine computes on integers, in which case the codec keeps samples and coefficients in
+     * integer planes too.
+     */
+    default boolean isFixedPoint() {
+        return false;
+    }
+
+    /**
+     * Reconstructs samples from coefficients, truncating each sample toward zero.
+     */
+    void inverseDCT(double[] block);
+
+    /**
+     * The multipliers {@link #forwardQuantized} takes for table: the reciprocals of its divisors, unless the
+     * engine needs something else there.
+     */
+    default double[] quantizers(QuantizationTable table) {
+        double[] quantizers = new double[64];
+        for (int i = 0; i < 64; i++) quantizers[i] = table.getReciprocal(i);
+        return quantizers;
+    }
+
+    /**
+     * The multipliers {@link #inverseDequantized} takes for table: its divisors.
+     */
+    default double[] dequantizers(QuantizationTable table) {
+        double[] dequantizers = new double[64];
+        for (int i = 0; i < 64; i++) dequantizers[i] = table.getDivisor(i);
+        return dequantizers;
+    }
+
+    /**
+     * Forward DCT followed by multiplication with quantizers, rounded to the nearest integer.
+     */
+    default void forwardQuantized(double[] block, double[] quantizers) {
+        forwardDCT(block);
+        for (int i = 0; i < 64; i++) block[i] = Math.rint(block[i] * quantizers[i]);
+    }
+
+    /**
+     * Multiplication by dequantizers followed by the inverse DCT.
+     */
+    default void inverseDequantized(double[] block, double[] dequantizers) {
+        for (int i = 0; i < 64; i++) block[i] *= dequantizers[i];
+        inverseDCT(block);
+    }
+
+    /**
+     * {@link #inverseDequantized} for a block whose coefficients are zero from the end-th on in zig-zag order,
+     * as the entropy decoder reports: 1 for a DC-only block, which comes out as one constant. Engines may skip
+     * the known zeros but must give the same result as the full transform; by default they run it.
+     */
+    default void inverseDequantized(double[] block, double[] dequantizers, int end) {
+        inverseDequantized(block, dequantizers);
+    }
+}
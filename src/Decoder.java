@@ -0,0 +1,146 @@
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Decodes {@link EncodedImage}s and .yuvj files back into YUV {@link Image}s at full resolution. The chroma
+ * mode, tables and restart intervals come from what is decoded; the DCT engine, pool, plane storage and block
+ * dumps from the {@link CodecSettings} the decoder is created with, as they were then.
+ * <p>
+ * Block transforms are built once per distinct quantization table and kept, so decoding images written
+ * with the same settings builds none. Like {@link Encoder}, calls take scratch planes from a queue and put
+ * them back when done, so one instance can decode on any number of threads at once.
+ */
+public class Decoder {
+    private final DCTEngine dctEngine;
+    private final Plane.Storage sampleStorage;
+    private final Plane.Storage coefficientStorage;
+    private final ForkJoinPool pool;
+    private final Path blockDumpDirectory;
+    private final BlockDumper.Format blockDumpFormat;
+    private final Map<QuantizationTable, BlockTransform> transforms = new ConcurrentHashMap<>();
+    private final Queue<Scratch> scratches = new ConcurrentLinkedQueue<>();
+
+    public Decoder() {
+        this(new CodecSettings());
+    }
+
+    public Decoder(CodecSettings settings) {
+        this.dctEngine = settings.getDctEngine();
+        this.sampleStorage = settings.getSampleStorage();
+        this.coefficientStorage = settings.getCoefficientStorage();
+        this.pool = settings.getPool();
+        this.blockDumpDirectory = settings.getBlockDumpDirectory();
+        this.blockDumpFormat = settings.getBlockDumpFormat();
+        for (QuantizationTable table : settings.getQuantizationTables())
+            transform(table);
+    }
+
+    static final class Scratch {
+        // coefficients, then the decoded samples, of Y, U and V
+        final Plane[] planes = new Plane[6];
+        // where the nonzero coefficients of every block end, letting the transform skip the zeros after
+        final byte[][] ends = new byte[3][];
+    }
+
+    public Image decode(EncodedImage image) {
+        if (image.isDelta())
+            throw new IllegalArgumentException("Delta frames can only be decoded in sequence");
+        Scratch scratch = scratches.poll();
+        if (scratch == null)
+            scratch = new Scratch();
+        try {
+            return decode(image, scratch);
+        } finally {
+            scratches.add(scratch);
+        }
+    }
+
+    public Image decode(YuvjReader file) {
+        if (file.isDelta())
+            throw new IllegalArgumentException("Delta frames can only be decoded in sequence: " + file.getFileName());
+        Scratch scratch = scratches.poll();
+        if (scratch == null)
+            scratch = new Scratch();
+        try {
+            return decode(file, scratch);
+        } finally {
+            scratches.add(scratch);
+        }
+    }
+
+    /**
+     * Decodes image with the planes of scratch. For a delta frame these must still hold the frame before, of
+     * the same size and tables; see {@link SequenceDecoder}.
+     */
+    Image decode(EncodedImage image, Scratch scratch) {
+        return decode(image.getWidth(), image.getHeight(), image.getChromaMode(), image.getRestartInterval(),
+                new QuantizationTable[]{image.getQuantization(0), image.getQuantization(1), image.getQuantization(2)},
+                image.createEntropyCoder(), image.getPayload(), image.getRestarts(), image.isDelta(), scratch);
+    }
+
+    Image decode(YuvjReader file, Scratch scratch) {
+        return decode(file.getWidth(), file.getHeight(), file.getChromaMode(), file.getRestartInterval(),
+                new QuantizationTable[]{file.getQuantization(0), file.getQuantization(1), file.getQuantization(2)},
+                file.createEntropyCoder(), file.getPayload(), file.getRestarts(), file.isDelta(), scratch);
+    }
+
+    private BlockTransform transform(QuantizationTable table) {
+        return transforms.computeIfAbsent(table, key -> new BlockTransform(dctEngine, key));
+    }
+
+    private Image decode(int width, int height, ChromaMode chromaMode, int restartInterval,
+                         QuantizationTable[] quantization, EntropyCoder coder, ByteBuffer payload, int[] restarts,
+                         boolean delta, Scratch scratch) {
+        Plane[] planes = scratch.planes;
+        BlockDumper dumper = BlockDumper.create(blockDumpDirectory, blockDumpFormat);
+        try {
+            int mcusPerRow = chromaMode.getMcusPerRow(width);
+            int mcuRows = chromaMode.getMcuRows(height);
+            Log.info("Decoding image");
+
+            Plane[] coefficients = new Plane[3];
+            coefficients[0] = Plane.recycle(planes[0], mcusPerRow * chromaMode.getMcuWidth(), mcuRows * chromaMode.getMcuHeight(), coefficientStorage);
+            coefficients[1] = Plane.recycle(planes[1], mcusPerRow * 8, mcuRows * 8, coefficientStorage);
+            coefficients[2] = Plane.recycle(planes[2], mcusPerRow * 8, mcuRows * 8, coefficientStorage);
+            byte[][] ends = scratch.ends;
+            for (int i = 0; i < 3; i++) {
+                int blocks = coefficients[i].getWidth() / 8 * (coefficients[i].getHeight() / 8);
+                if (ends[i] == null || ends[i].length != blocks)
+                    ends[i] = new byte[blocks];
+            }
+            new PayloadDecoder(payload, restarts, restartInterval, coder, chromaMode, mcusPerRow, mcuRows, delta)
+                    .decode(pool, coefficients, ends);
+            BlockDumper.dump(dumper, coefficients[0], "yEntropyBlocks");
+            BlockDumper.dump(dumper, coefficients[1], "uEntropyBlocks");
+            BlockDumper.dump(dumper, coefficients[2], "vEntropyBlocks");
+
+            Log.info("Decoding %s number of blocks", chromaMode.getBlocksPerMcu() * mcusPerRow * mcuRows);
+            BlockTransform[] transforms = new BlockTransform[3];
+            Plane[] decoded = new Plane[3];
+            for (int i = 0; i < 3; i++) {
+                transforms[i] = transform(quantization[i]);
+                decoded[i] = Plane.recycle(planes[3 + i], coefficients[i].getWidth(), coefficients[i].getHeight(), sampleStorage);
+            }
+            BlockRowTask.forEachBlockRow(pool, coefficients, (component, line) ->
+                    transforms[component].inverseRow(coefficients[component], decoded[component], line, ends[component]));
+
+            // crop the padding off Y and bring U and V back to full resolution
+            Plane[] yuv = new Plane[3];
+            yuv[0] = decoded[0].resize(width, height);
+            for (int i = 1; i < 3; i++) {
+                yuv[i] = Plane.allocate(width, height, sampleStorage);
+                chromaMode.upsample(decoded[i], yuv[i], height);
+            }
+            System.arraycopy(coefficients, 0, planes, 0, 3);
+            System.arraycopy(decoded, 0, planes, 3, 3);
+            return new Image(yuv[0], yuv[1], yuv[2]);
+        } finally {
+            BlockDumper.close(dumper);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A coded image held in memory: what goes into a .yuvj file, before it is written. Read-only, so it can be
+ * decoded by several threads at once.
+ */
+public class EncodedImage {
+    private final int width;
+    private final int height;
+    private final ChromaMode chromaMode;
+    private final int restartInterval;
+    private final QuantizationTable[] quantization;
+    private final int[] componentTables;
+    private final HuffmanTable[] huffmanTables;
+    private final byte[] payload;
+    private final int[] restarts;
+    private final boolean delta;
+
+    public EncodedImage(int width, int height, ChromaMode chromaMode, int restartInterval,
+                        QuantizationTable[] quantization, int[] componentTables, HuffmanTable[] huffmanTables,
+                        byte[] payload, int[] restarts) {
+        this(width, height, chromaMode, restartInterval, quantization, componentTables, huffmanTables, payload,
+                restarts, false);
+    }
+
+    public EncodedImage(int width, int height, ChromaMode chromaMode, int restartInterval,
+                        QuantizationTable[] quantization, int[] componentTables, HuffmanTable[] huffmanTables,
+                        byte[] payload, int[] restarts, boolean delta) {
+        this.width = width;
+        this.height = height;
+        this.chromaMode = chromaMode;
+        this.restartInterval = restartInterval;
+        this.quantization = quantization;
+        this.componentTables = componentTables;
+        this.huffmanTables = huffmanTables;
+        this.payload = payload;
+        this.restarts = restarts;
+        this.delta = delta;
+    }
+
+    public void write(String fileName) throws IOException {
+        try (Metrics.Span span = Metrics.start(Metrics.Stage.WRITE);
+             YuvjWriter writer = new YuvjWriter(fileName, width, height, chromaMode, restartInterval,
+                     quantization, componentTables, huffmanTables, delta)) {
+            span.units((long) width * height).bytesOut(payload.length);
+            writer.write(payload);
+            for (int restart : restarts)
+                writer.addRestart(restart);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public ChromaMode getChromaMode() {
+        return chromaMode;
+    }
+
+    public int getRestartInterval() {
+        return restartInterval;
+    }
+
+    /**
+     * Whether this is a delta frame of a {@link SequenceEncoder}, which only a {@link SequenceDecoder} that
+     * decoded the frames before it can decode.
+     */
+    public boolean isDelta() {
+        return delta;
+    }
+
+    public QuantizationTable getQuantization(int component) {
+        return quantization[componentTables[component]];
+    }
+
+    public HuffmanTable[] getHuffmanTables() {
+        return huffmanTables.clone();
+    }
+
+    public EntropyCoder createEntropyCoder() {
+        return new EntropyCoder(huffmanTables[0], huffmanTables[1], huffmanTables[2], huffmanTables[3]);
+    }
+
+    /**
+     * The entropy coded payload, from position 0 to its limit.
+     */
+    public ByteBuffer getPayload() {
+        return ByteBuffer.wrap(payload).asReadOnlyBuffer();
+    }
+
+    public int getPayloadLength() {
+        return payload.length;
+    }
+
+    public int[] getRestarts() {
+        return restarts.clone();
+    }
+}
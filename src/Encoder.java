@@ -0,0 +1,309 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Encodes the YUV planes of {@link Image}s into {@link EncodedImage}s. The quantization tables and block
+ * transforms are built, and everything else is taken from its {@link CodecSettings}, when the encoder is
+ * created; later changes to the settings do not affect it.
+ * <p>
+ * Samples and coefficients are held in the storage of the settings, whatever storage the image is in. The
+ * image converted its RGB to YUV in its own storage, so for an all fixed-point pipeline it should be read
+ * with {@link CodecSettings#getSampleStorage()}.
+ * <p>
+ * The image is only read. Per-call state lives in scratch buffers that a call takes from a queue and puts
+ * back when done, or creates when every one is in use, so one instance can encode on any number of threads
+ * at once and a busy one allocates little more than the payload of each image.
+ */
+public class Encoder {
+    private final QuantizationTable[] quantization;
+    private final BlockTransform[] transforms;
+    private final ChromaMode chromaMode;
+    private final int restartInterval;
+    private final boolean optimizedHuffman;
+    private final Plane.Storage sampleStorage;
+    private final Plane.Storage coefficientStorage;
+    private final ForkJoinPool pool;
+    private final Path blockDumpDirectory;
+    private final BlockDumper.Format blockDumpFormat;
+    private final Queue<Scratch> scratches = new ConcurrentLinkedQueue<>();
+
+    public Encoder() {
+        this(new CodecSettings());
+    }
+
+    public Encoder(CodecSettings settings) {
+        this.quantization = settings.getQuantizationTables();
+        BlockTransform chroma = new BlockTransform(settings.getDctEngine(), quantization[1]);
+        this.transforms = new BlockTransform[]{new BlockTransform(settings.getDctEngine(), quantization[0]), chroma, chroma};
+        this.chromaMode = settings.getChromaMode();
+        this.restartInterval = settings.getRestartInterval();
+        this.optimizedHuffman = settings.isOptimizedHuffman();
+        this.sampleStorage = settings.getSampleStorage();
+        this.coefficientStorage = settings.getCoefficientStorage();
+        this.pool = settings.getPool();
+        this.blockDumpDirectory = settings.getBlockDumpDirectory();
+        this.blockDumpFormat = settings.getBlockDumpFormat();
+    }
+
+    static final class Scratch {
+        final Plane[] samples = new Plane[3];
+        final Plane[] coefficients = new Plane[3];
+        // what a SequenceEncoder keeps of the frame before: its samples, and which blocks came out the same
+        final Plane[] previous = new Plane[3];
+        final boolean[][] unchanged = new boolean[3][];
+        final int[] predictors = new int[3];
+        final double[] block = new double[64];
+        // symbol << 16 | value & 0xffff per code, see addEntropy
+        int[] entropy = new int[0];
+        int entropySize;
+    }
+
+    public EncodedImage encode(Image image) {
+        Scratch scratch = scratches.poll();
+        if (scratch == null)
+            scratch = new Scratch();
+        try {
+            return encode(image, scratch, false);
+        } finally {
+            scratches.add(scratch);
+        }
+    }
+
+    /**
+     * Encodes image with the planes of scratch. A delta frame is coded against the frame before, whose samples
+     * must be in scratch.previous and whose coefficients still in scratch.coefficients, the image having the
+     * same size; see {@link SequenceEncoder}.
+     */
+    EncodedImage encode(Image image, Scratch scratch, boolean delta) {
+        BlockDumper dumper = BlockDumper.create(blockDumpDirectory, blockDumpFormat);
+        try {
+            return encode(image, scratch, delta, dumper);
+        } finally {
+            BlockDumper.close(dumper);
+        }
+    }
+
+    private EncodedImage encode(Image image, Scratch scratch, boolean delta, BlockDumper dumper) {
+        int mcusPerRow = chromaMode.getMcusPerRow(image.getWidth());
+        int mcuRows = chromaMode.getMcuRows(image.getHeight());
+        Log.info("Encoding image");
+        Log.info("Dividing %s number of blocks", chromaMode.getBlocksPerMcu() * mcusPerRow * mcuRows);
+
+        // Y padded to whole MCUs, U and V decimated to one sample per chroma cell and padded to whole blocks, in
+        // the storage of the settings whatever the image is held in
+        Plane[] samples = scratch.samples;
+        samples[0] = Plane.recycle(samples[0], mcusPerRow * chromaMode.getMcuWidth(), mcuRows * chromaMode.getMcuHeight(), sampleStorage);
+        samples[1] = Plane.recycle(samples[1], mcusPerRow * 8, mcuRows * 8, sampleStorage);
+        samples[2] = Plane.recycle(samples[2], mcusPerRow * 8, mcuRows * 8, sampleStorage);
+        image.getY().copyTo(samples[0]);
+        chromaMode.downsample(image.getU(), samples[1], samples[1].getHeight());
+        chromaMode.downsample(image.getV(), samples[2], samples[2].getHeight());
+        BlockDumper.dump(dumper, samples[0], "yBlocks");
+        BlockDumper.dump(dumper, samples[2], "vBlocks");
+        BlockDumper.dump(dumper, samples[1], "uBlocks");
+
+        Plane[] coefficients = scratch.coefficients;
+        for (int i = 0; i < 3; i++)
+            coefficients[i] = Plane.recycle(coefficients[i], samples[i].getWidth(), samples[i].getHeight(), coefficientStorage);
+        if (delta) {
+            Plane[] previous = scratch.previous;
+            boolean[][] unchanged = scratch.unchanged;
+            for (int i = 0; i < 3; i++) {
+                int blocks = samples[i].getWidth() / 8 * (samples[i].getHeight() / 8);
+                if (unchanged[i] == null || unchanged[i].length != blocks)
+                    unchanged[i] = new boolean[blocks];
+            }
+            BlockRowTask.forEachBlockRow(pool, samples, (component, line) ->
+                    transforms[component].forwardRow(samples[component], previous[component], coefficients[component],
+                            line, unchanged[component]));
+        } else {
+            BlockRowTask.forEachBlockRow(pool, samples, (component, line) ->
+                    transforms[component].forwardRow(samples[component], coefficients[component], line));
+        }
+
+        try (Metrics.Span span = Metrics.start(Metrics.Stage.ENTROPY_ENCODE)
+                .units((long) chromaMode.getBlocksPerMcu() * mcusPerRow * mcuRows)) {
+            entropyEncoding(scratch, mcusPerRow, mcuRows, delta ? scratch.unchanged : null);
+            EncodedImage encoded = huffmanEncoding(scratch, image.getWidth(), image.getHeight(), mcusPerRow * mcuRows, delta);
+            span.bytesOut(encoded.getPayloadLength());
+            return encoded;
+        }
+    }
+
+    /**
+     * Encodes image and writes the result to fileName as a .yuvj file.
+     */
+    public void encode(Image image, String fileName) throws IOException {
+        encode(image).write(fileName);
+    }
+
+    // MCUs in raster order, each as its luma blocks in raster order followed by one U and one V block; unchanged
+    // is null unless this is a delta frame
+    private void entropyEncoding(Scratch scratch, int mcusPerRow, int mcuRows, boolean[][] unchanged) {
+        Plane[] coefficients = scratch.coefficients;
+        int[] predictors = scratch.predictors;
+        scratch.entropySize = 0;
+        if (scratch.entropy.length == 0)
+            scratch.entropy = new int[8 * chromaMode.getBlocksPerMcu() * mcusPerRow * mcuRows];
+        int horizontal = chromaMode.getHorizontal();
+        int vertical = chromaMode.getVertical();
+        int mcu = 0;
+        for (int line = 0; line < mcuRows * 8; line += 8) {
+            for (int column = 0; column < mcusPerRow * 8; column += 8, mcu++) {
+                if (restartInterval == 0 ? mcu == 0 : mcu % restartInterval == 0)
+                    Arrays.fill(predictors, 0);
+                for (int i = 0; i < vertical; i++)
+                    for (int j = 0; j < horizontal; j++)
+                        addBlock(scratch, coefficients[0], line * vertical + i * 8, column * horizontal + j * 8, 0, unchanged);
+                addBlock(scratch, coefficients[1], line, column, 1, unchanged);
+                addBlock(scratch, coefficients[2], line, column, 2, unchanged);
+            }
+        }
+    }
+
+    // in a delta frame every block starts with a flag code, 1 when it is unchanged and left out and 0 otherwise;
+    // left out blocks do not take part in DC prediction
+    private static void addBlock(Scratch scratch, Plane coefficients, int line, int column, int component, boolean[][] unchanged) {
+        if (unchanged != null) {
+            boolean skip = unchanged[component][line / 8 * (coefficients.getWidth() / 8) + column / 8];
+            reserve(scratch, 1)[scratch.entropySize++] = skip ? 1 : 0;
+            if (skip)
+                return;
+        }
+        coefficients.read(line, column, 8, scratch.block);
+        addEntropy(scratch, scratch.block, component);
+    }
+
+    private static int[] reserve(Scratch scratch, int codes) {
+        int[] entropy = scratch.entropy;
+        if (scratch.entropySize + codes > entropy.length)
+            scratch.entropy = entropy = Arrays.copyOf(entropy, Math.max(entropy.length + entropy.length / 2, scratch.entropySize + codes));
+        return entropy;
+    }
+
+    // DC is stored as (size, difference to the previous DC of the channel), every AC run as (run << 4 | size, value)
+    // with runs split into (0xf0, 0) chunks of sixteen zeros, and the trailing zeros as (0, 0); each pair is packed
+    // into one int, values of 8 bit images needing at most 12 bits
+    private static void addEntropy(Scratch scratch, double[] matrix, int component) {
+        int[] list = BlockScratch.get().list;
+        int end = EntropyCoder.zigzagCrossing(matrix, list);
+        // a block takes at most 64 codes
+        int[] entropy = reserve(scratch, 64);
+
+        int difference = list[0] - scratch.predictors[component];
+        scratch.predictors[component] = list[0];
+        int size = scratch.entropySize;
+        entropy[size++] = EntropyCoder.category(difference) << 16 | difference & 0xffff;
+
+        int run = 0;
+        for (int k = 1; k < end; k++) {
+            int value = list[k];
+            if (value == 0) {
+                run++;
+                continue;
+            }
+            while (run > 15) {
+                entropy[size++] = 0xf0 << 16;
+                run -= 16;
+            }
+            entropy[size++] = (run << 4 | EntropyCoder.category(value)) << 16 | value & 0xffff;
+            run = 0;
+        }
+        if (end < 64)
+            entropy[size++] = 0;
+        scratch.entropySize = size;
+    }
+
+    private EncodedImage huffmanEncoding(Scratch scratch, int width, int height, int mcus, boolean delta) {
+        HuffmanTable[] dcTables = new HuffmanTable[2];
+        HuffmanTable[] acTables = new HuffmanTable[2];
+        if (optimizedHuffman) {
+            long[][] dcFrequencies = new long[2][256];
+            long[][] acFrequencies = new long[2][256];
+            walkEntropy(scratch, delta, (table, symbol, value) -> {
+                if (table < 2)
+                    dcFrequencies[table][symbol]++;
+                else if (table < 4)
+                    acFrequencies[table - 2][symbol]++;
+            }, () -> {
+            });
+            for (int i = 0; i < 2; i++) {
+                dcTables[i] = HuffmanTable.optimal(dcFrequencies[i]);
+                acTables[i] = HuffmanTable.optimal(acFrequencies[i]);
+            }
+        } else {
+            dcTables[0] = HuffmanTable.LUMINANCE_DC;
+            dcTables[1] = HuffmanTable.CHROMINANCE_DC;
+            acTables[0] = HuffmanTable.LUMINANCE_AC;
+            acTables[1] = HuffmanTable.CHROMINANCE_AC;
+        }
+
+        int[] restarts = new int[restartInterval == 0 ? 0 : (mcus + restartInterval - 1) / restartInterval];
+        BitWriter writer = new BitWriter(scratch.entropySize);
+        // every interval after the first starts on a byte boundary
+        int[] restartCount = {restarts.length == 0 ? 0 : 1};
+        walkEntropy(scratch, delta, (table, symbol, value) -> {
+            if (table == SKIP_FLAG) {
+                writer.write(symbol, 1);
+                return;
+            }
+            if (table < 2)
+                dcTables[table].encode(writer, symbol);
+            else
+                acTables[table - 2].encode(writer, symbol);
+            writer.writeAmplitude(value, symbol & 15);
+        }, () -> {
+            writer.flush();
+            restarts[restartCount[0]++] = writer.size();
+        });
+        byte[] payload = writer.toByteArray();
+        Log.info("Entropy payload %s bytes", payload.length);
+        return new EncodedImage(width, height, chromaMode, restartInterval, quantization, new int[]{0, 1, 1},
+                new HuffmanTable[]{dcTables[0], acTables[0], dcTables[1], acTables[1]}, payload, restarts, delta);
+    }
+
+    private static final int SKIP_FLAG = 4;
+
+    private interface SymbolVisitor {
+        // table is 0/1 for the luma/chroma DC table, 2/3 for the luma/chroma AC table and SKIP_FLAG for the flag
+        // of a block in a delta frame, which is written as a single bit
+        void visit(int table, int symbol, int value);
+    }
+
+    // onRestart runs before the first block of every restart interval but the first
+    private void walkEntropy(Scratch scratch, boolean delta, SymbolVisitor visitor, Runnable onRestart) {
+        int[] entropy = scratch.entropy;
+        int blocks = chromaMode.getBlocksPerMcu();
+        int pos = 0;
+        int index = 0;
+        int mcu = 0;
+        while (pos < scratch.entropySize) {
+            if (index == 0 && restartInterval > 0 && mcu > 0 && mcu % restartInterval == 0)
+                onRestart.run();
+            int chroma = index < chromaMode.getLumaBlocks() ? 0 : 1;
+            index = (index + 1) % blocks;
+            if (index == 0)
+                mcu++;
+            if (delta) {
+                int skip = entropy[pos++];
+                visitor.visit(SKIP_FLAG, skip, 0);
+                if (skip == 1)
+                    continue;
+            }
+            visitor.visit(chroma, entropy[pos] >>> 16, (short) entropy[pos]);
+            pos++;
+            for (int k = 1; k < 64; ) {
+                int symbol = entropy[pos] >>> 16;
+                visitor.visit(2 + chroma, symbol, (short) entropy[pos]);
+                pos++;
+                if (symbol == 0)
+                    break;
+                k += (symbol >> 4) + 1;
+            }
+        }
+    }
+}
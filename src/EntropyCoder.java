@@ -0,0 +1,151 @@
+import java.util.Arrays;
+
+/**
+ * Huffman codes quantized 8x8 blocks: DC as the difference to the previous DC of the same channel,
+ * AC as (run, size) symbols followed by the raw amplitude bits. Keeps the per-channel DC predictors,
+ * so one instance codes one stream at a time.
+ */
+public class EntropyCoder {
+    // raster index of the k-th coefficient in zig-zag order
+    static final int[] ZIGZAG = {
+            0, 1, 8, 16, 9, 2, 3, 10,
+            17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34,
+            27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36,
+            29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46,
+            53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    // index 0 is used for Y, index 1 for U and V
+    private final HuffmanTable[] dcTables;
+    private final HuffmanTable[] acTables;
+    private final int[] predictors = new int[3];
+
+    public EntropyCoder(HuffmanTable lumaDC, HuffmanTable lumaAC, HuffmanTable chromaDC, HuffmanTable chromaAC) {
+        dcTables = new HuffmanTable[]{lumaDC, chromaDC};
+        acTables = new HuffmanTable[]{lumaAC, chromaAC};
+    }
+
+    public static EntropyCoder standard() {
+        return new EntropyCoder(HuffmanTable.LUMINANCE_DC, HuffmanTable.LUMINANCE_AC,
+                HuffmanTable.CHROMINANCE_DC, HuffmanTable.CHROMINANCE_AC);
+    }
+
+    /**
+     * A coder over the same tables with its own predictors, for decoding another part of the stream.
+     */
+    public EntropyCoder copy() {
+        return new EntropyCoder(dcTables[0], acTables[0], dcTables[1], acTables[1]);
+    }
+
+    public void reset() {
+        Arrays.fill(predictors, 0);
+    }
+
+    public void encodeBlock(double[] matrix, int component, BitWriter writer) {
+        HuffmanTable dcTable = dcTables[component == 0 ? 0 : 1];
+        HuffmanTable acTable = acTables[component == 0 ? 0 : 1];
+        int[] list = BlockScratch.get().list;
+        int end = zigzagCrossing(matrix, list);
+        int difference = list[0] - predictors[component];
+        predictors[component] = list[0];
+        int size = category(difference);
+        dcTable.encode(writer, size);
+        writer.writeAmplitude(difference, size);
+
+        int run = 0;
+        for (int k = 1; k < end; k++) {
+            int value = list[k];
+            if (value == 0) {
+                run++;
+                continue;
+            }
+            while (run > 15) {
+                acTable.encode(writer, 0xf0);
+                run -= 16;
+            }
+            size = category(value);
+            acTable.encode(writer, run << 4 | size);
+            writer.writeAmplitude(value, size);
+            run = 0;
+        }
+        if (end < 64)
+            acTable.encode(writer, 0x00);
+    }
+
+    /**
+     * Decodes the next block into matrix and returns its end: the zig-zag position after its last non-zero
+     * coefficient, 1 when only DC can be non-zero.
+     */
+    public int decodeBlock(BitReader reader, int component, double[] matrix) {
+        HuffmanTable dcTable = dcTables[component == 0 ? 0 : 1];
+        HuffmanTable acTable = acTables[component == 0 ? 0 : 1];
+        Arrays.fill(matrix, 0.0);
+
+        predictors[component] += reader.readAmplitude(dcTable.decode(reader));
+        matrix[0] = predictors[component];
+
+        int end = 1;
+        for (int k = 1; k < 64; ) {
+            int symbol = acTable.decode(reader);
+            int run = symbol >> 4;
+            int size = symbol & 15;
+            if (size == 0) {
+                if (run != 15)
+                    break;
+                k += 16;
+                continue;
+            }
+            k += run;
+            matrix[ZIGZAG[k++]] = reader.readAmplitude(size);
+            end = k;
+        }
+        return end;
+    }
+
+    /**
+     * Decodes only the DC coefficient of the next block, parsing its AC codes without storing them.
+     */
+    public int decodeDC(BitReader reader, int component) {
+        HuffmanTable dcTable = dcTables[component == 0 ? 0 : 1];
+        HuffmanTable acTable = acTables[component == 0 ? 0 : 1];
+
+        predictors[component] += reader.readAmplitude(dcTable.decode(reader));
+        for (int k = 1; k < 64; ) {
+            int symbol = acTable.decode(reader);
+            int size = symbol & 15;
+            if (size == 0) {
+                if (symbol >> 4 != 15)
+                    break;
+                k += 16;
+                continue;
+            }
+            k += (symbol >> 4) + 1;
+            reader.read(size);
+        }
+        return predictors[component];
+    }
+
+    /**
+     * Bits of the magnitude of value: the JPEG size category, 0 for 0.
+     */
+    static int category(int value) {
+        return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+    }
+
+    /**
+     * Reorders matrix into list in zig-zag order and returns the end of the block: the position after its
+     * last non-zero coefficient, at least 1, so coders stop there instead of scanning the trailing zeros.
+     */
+    static int zigzagCrossing(double[] matrix, int[] list) {
+        int end = 1;
+        for (int k = 0; k < 64; k++) {
+            int value = (int) matrix[ZIGZAG[k]];
+            list[k] = value;
+            end = value != 0 ? k + 1 : end;
+        }
+        return end;
+    }
+}
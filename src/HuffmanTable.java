@@ -0,0 +1,192 @@
+import java.util.Arrays;
+
+/**
+ * Canonical Huffman table over byte symbols, described JPEG style by the number of codes of each length
+ * (1..16 bits) and the symbols in code order.
+ * <p>
+ * DC symbols are size categories. AC symbols are {@code run << 4 | size}, with 0x00 meaning end of block
+ * and 0xF0 a run of sixteen zeros.
+ */
+public final class HuffmanTable {
+    private static final int LOOKUP_BITS = 9;
+
+    private final int[] bits;
+    private final int[] values;
+
+    private final int[] codes = new int[256];
+    private final int[] lengths = new int[256];
+
+    private final int[] maxCode = new int[18];
+    private final int[] valueOffset = new int[17];
+    // (length << 8) | symbol for every code of at most LOOKUP_BITS bits, 0 when the code is longer
+    private final int[] lookup = new int[1 << LOOKUP_BITS];
+
+    public HuffmanTable(int[] bits, int[] values) {
+        this.bits = bits.clone();
+        this.values = values.clone();
+
+        int code = 0;
+        int k = 0;
+        for (int length = 1; length <= 16; length++) {
+            valueOffset[length] = k - code;
+            for (int i = 0; i < bits[length - 1]; i++, k++, code++) {
+                int symbol = values[k];
+                codes[symbol] = code;
+                lengths[symbol] = length;
+                if (length <= LOOKUP_BITS) {
+                    int shift = LOOKUP_BITS - length;
+                    int entry = length << 8 | symbol;
+                    Arrays.fill(lookup, code << shift, (code + 1) << shift, entry);
+                }
+            }
+            maxCode[length] = bits[length - 1] == 0 ? -1 : code - 1;
+            code <<= 1;
+        }
+        maxCode[17] = Integer.MAX_VALUE;
+    }
+
+    public static final HuffmanTable LUMINANCE_DC = new HuffmanTable(
+            new int[]{0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0},
+            new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11});
+
+    public static final HuffmanTable CHROMINANCE_DC = new HuffmanTable(
+            new int[]{0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0},
+            new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11});
+
+    public static final HuffmanTable LUMINANCE_AC = new HuffmanTable(
+            new int[]{0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d},
+            new int[]{
+                    0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12, 0x21, 0x31, 0x41, 0x06, 0x13, 0x51, 0x61, 0x07,
+                    0x22, 0x71, 0x14, 0x32, 0x81, 0x91, 0xa1, 0x08, 0x23, 0x42, 0xb1, 0xc1, 0x15, 0x52, 0xd1, 0xf0,
+                    0x24, 0x33, 0x62, 0x72, 0x82, 0x09, 0x0a, 0x16, 0x17, 0x18, 0x19, 0x1a, 0x25, 0x26, 0x27, 0x28,
+                    0x29, 0x2a, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49,
+                    0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69,
+                    0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89,
+                    0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7,
+                    0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5,
+                    0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe1, 0xe2,
+                    0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf1, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+                    0xf9, 0xfa});
+
+    public static final HuffmanTable CHROMINANCE_AC = new HuffmanTable(
+            new int[]{0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 0x77},
+            new int[]{
+                    0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21, 0x31, 0x06, 0x12, 0x41, 0x51, 0x07, 0x61, 0x71,
+                    0x13, 0x22, 0x32, 0x81, 0x08, 0x14, 0x42, 0x91, 0xa1, 0xb1, 0xc1, 0x09, 0x23, 0x33, 0x52, 0xf0,
+                    0x15, 0x62, 0x72, 0xd1, 0x0a, 0x16, 0x24, 0x34, 0xe1, 0x25, 0xf1, 0x17, 0x18, 0x19, 0x1a, 0x26,
+                    0x27, 0x28, 0x29, 0x2a, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48,
+                    0x49, 0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68,
+                    0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x82, 0x83, 0x84, 0x85, 0x86, 0x87,
+                    0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5,
+                    0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3,
+                    0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda,
+                    0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+                    0xf9, 0xfa});
+
+    /**
+     * Builds the optimal table for the given symbol frequencies, limited to 16-bit codes and never
+     * assigning the all-ones code (JPEG Annex K.2).
+     */
+    public static HuffmanTable optimal(long[] frequencies) {
+        long[] freq = new long[257];
+        System.arraycopy(frequencies, 0, freq, 0, Math.min(256, frequencies.length));
+        freq[256] = 1;
+        int[] codeSize = new int[257];
+        int[] others = new int[257];
+        Arrays.fill(others, -1);
+
+        while (true) {
+            int c1 = -1;
+            long v = Long.MAX_VALUE;
+            for (int i = 0; i <= 256; i++)
+                if (freq[i] != 0 && freq[i] <= v) {
+                    v = freq[i];
+                    c1 = i;
+                }
+            int c2 = -1;
+            v = Long.MAX_VALUE;
+            for (int i = 0; i <= 256; i++)
+                if (freq[i] != 0 && freq[i] <= v && i != c1) {
+                    v = freq[i];
+                    c2 = i;
+                }
+            if (c2 < 0)
+                break;
+
+            freq[c1] += freq[c2];
+            freq[c2] = 0;
+            codeSize[c1]++;
+            while (others[c1] >= 0) {
+                c1 = others[c1];
+                codeSize[c1]++;
+            }
+            others[c1] = c2;
+            codeSize[c2]++;
+            while (others[c2] >= 0) {
+                c2 = others[c2];
+                codeSize[c2]++;
+            }
+        }
+
+        int[] count = new int[258];
+        for (int i = 0; i <= 256; i++)
+            if (codeSize[i] != 0)
+                count[codeSize[i]]++;
+
+        for (int i = 257; i > 16; i--) {
+            while (count[i] > 0) {
+                int j = i - 2;
+                while (count[j] == 0) j--;
+                count[i] -= 2;
+                count[i - 1]++;
+                count[j + 1] += 2;
+                count[j]--;
+            }
+        }
+        int i = 16;
+        while (i > 0 && count[i] == 0) i--;
+        if (i > 0)
+            count[i]--;
+
+        int[] bits = new int[16];
+        System.arraycopy(count, 1, bits, 0, 16);
+        int total = 0;
+        for (int b : bits) total += b;
+        int[] values = new int[total];
+        int k = 0;
+        for (int length = 1; length < count.length; length++)
+            for (int symbol = 0; symbol < 256; symbol++)
+                if (codeSize[symbol] == length) values[k++] = symbol;
+        return new HuffmanTable(bits, values);
+    }
+
+    public void encode(BitWriter writer, int symbol) {
+        writer.write(codes[symbol], lengths[symbol]);
+    }
+
+    public int decode(BitReader reader) {
+        int entry = lookup[reader.peek(LOOKUP_BITS)];
+        if (entry != 0) {
+            reader.skip(entry >>> 8);
+            return entry & 0xff;
+        }
+        int length = LOOKUP_BITS + 1;
+        int code = reader.peek(length);
+        while (code > maxCode[length]) {
+            length++;
+            code = reader.peek(length);
+        }
+        if (length > 16)
+            throw new IllegalStateException("Corrupt Huffman code");
+        reader.skip(length);
+        return values[code + valueOffset[length]];
+    }
+
+    public int[] getBits() {
+        return bits.clone();
+    }
+
+    public int[] getValues() {
+        return values.clone();
+    }
+}
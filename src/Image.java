@@ -1,9 +1,5 @@
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
 
 public class Image {
     private final String fileName;
@@ -11,12 +7,13 @@ public class Image {
     private String title;
     private int width;
     private int height;
-    private int[][] r;
-    private int[][] g;
-    private int[][] b;
-    private double[][] y;
-    private double[][] u;
-    private double[][] v;
+    private final Plane.Storage storage;
+    private Plane r;
+    private Plane g;
+    private Plane b;
+    private Plane y;
+    private Plane u;
+    private Plane v;
 
     private Image(Image image) {
         this.fileName = image.fileName;
@@ -24,80 +21,63 @@ public class Image {
         this.height = image.height;
         this.author = image.author;
         this.title = image.title;
-        this.r = new int[image.height][image.width];
-        this.g = new int[image.height][image.width];
-        this.b = new int[image.height][image.width];
+        this.storage = image.storage;
+        this.r = Plane.allocate(image.width, image.height, storage);
+        this.g = Plane.allocate(image.width, image.height, storage);
+        this.b = Plane.allocate(image.width, image.height, storage);
         this.y = image.y;
         this.u = image.u;
         this.v = image.v;
     }
 
+    /**
+     * An image of the given YUV planes, as decoded; it has RGB planes once converted with
+     * {@link #convertImageYUVtoRGB}.
+     */
+    public Image(Plane y, Plane u, Plane v) {
+        this.fileName = null;
+        this.width = y.getWidth();
+        this.height = y.getHeight();
+        this.storage = y.getStorage();
+        this.y = y;
+        this.u = u;
+        this.v = v;
+    }
+
     public Image(String fileName) {
+        this(fileName, Plane.Storage.HEAP);
+    }
+
+    public Image(String fileName, Plane.Storage storage) {
         this.fileName = fileName;
-        System.out.printf("Reading image %s%n", fileName);
+        this.storage = storage;
+        Log.info("Reading image %s", fileName);
         readImage();
         convertRGBtoYUV();
     }
 
     private void convertRGBtoYUV() {
-        y = new double[height][width];
-        u = new double[height][width];
-        v = new double[height][width];
-        for (int line = 0; line < height; line++) {
-            for (int column = 0; column < width; column++) {
-                y[line][column] = 0.299d * r[line][column] + 0.587d * g[line][column] + 0.144 * b[line][column];
-                u[line][column] = 128 - 0.1687d * r[line][column] - 0.3312d * g[line][column] + 0.5d * b[line][column];
-                v[line][column] = 128 + 0.5d * r[line][column] - 0.4186d * g[line][column] - 0.0813d * b[line][column];
-            }
-        }
+        y = Plane.allocate(width, height, storage);
+        u = Plane.allocate(width, height, storage);
+        v = Plane.allocate(width, height, storage);
+        ColorConverter.rgbToYuv(ForkJoinPool.commonPool(), r, g, b, y, u, v, height);
     }
 
     public Image convertImageYUVtoRGB() {
         Image newImage = new Image(this);
-        for (int line = 0; line < height; line++) {
-            for (int column = 0; column < width; column++) {
-                double R = y[line][column] + (1.370705 * (v[line][column] - 128));
-                double G = y[line][column] - (0.698001 * (u[line][column] - 128)) - (0.337633 * (v[line][column] - 128));
-                double B = y[line][column] + (1.732446 * (u[line][column] - 128));
-
-//                double R = y[line][column] + (1.402 * (v[line][column] - 128));
-//                double G = y[line][column] - (0.344 * (u[line][column] - 128)) - (0.714 * (v[line][column] - 128));
-//                double B = y[line][column] + (1.772 * (u[line][column] - 128));
-
-                if (R > 255) R = 255.0;
-                if (G > 255) G = 255.0;
-                if (B > 255) B = 255.0;
-
-                if (R < 0) R = 0.0;
-                if (G < 0) G = 0.0;
-                if (B < 0) B = 0.0;
-
-                newImage.r[line][column] = (int) R;
-                newImage.g[line][column] = (int) G;
-                newImage.b[line][column] = (int) B;
-            }
-        }
+        ColorConverter.yuvToRgb(ForkJoinPool.commonPool(), y, u, v, newImage.r, newImage.g, newImage.b, height);
         return newImage;
     }
 
     public void writeToPPM(String outputFileName) {
+        writeToPPM(outputFileName, PPMWriter.Format.P6);
+    }
+
+    public void writeToPPM(String outputFileName, PPMWriter.Format format) {
         try {
-            System.out.println(String.format("Image of size height: %s, width: %s final size %s", height, width, height * width * 3));
-            BufferedWriter writer = new BufferedWriter(new FileWriter("output/" + outputFileName + ".ppm"));
-            writer.write("P3\n");
-            writer.write("#" + author + "\n");
-            writer.write(height + " "  + width + "\n");
-            writer.write("255\n");
-            writer.write("255\n");
-            writer.write("255\n");
-            for (int line = 0; line < height; line++) {
-                for (int column = 0; column < width; column++) {
-                    writer.write(this.r[line][column] + "\n");
-                    writer.write(this.g[line][column] + "\n");
-                    writer.write(this.b[line][column] + "\n");
-                }
-            }
-            writer.close();
+            long start = System.nanoTime();
+            PPMWriter.write("output/" + outputFileName + ".ppm", r, g, b, format, author);
+            Log.info("Wrote %s %sx%s in %.1f ms", format, width, height, (System.nanoTime() - start) / 1e6);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -105,54 +85,52 @@ public class Image {
 
     private void readImage() {
         try {
-            BufferedReader reader = Files.newBufferedReader(Paths.get(this.fileName));
-            title = reader.readLine();
-            author = reader.readLine();
-            String[] size = reader.readLine().split(" ");
-            height = Integer.parseInt(size[0]);
-            width = Integer.parseInt(size[1]);
-            r = new int[height][width];
-            g = new int[height][width];
-            b = new int[height][width];
-            y = new double[height][width];
-            u = new double[height][width];
-            v = new double[height][width];
-            for (int line = 0; line < height; line++) {
-                for (int column = 0; column < width; column++) {
-                    r[line][column] = Integer.parseInt(reader.readLine());
-                    g[line][column] = Integer.parseInt(reader.readLine());
-                    b[line][column] = Integer.parseInt(reader.readLine());
-                }
-            }
+            long start = System.nanoTime();
+            PPMReader reader = new PPMReader(this.fileName);
+            title = reader.getMagic();
+            author = reader.getComment();
+            width = reader.getWidth();
+            height = reader.getHeight();
+            r = Plane.allocate(width, height, storage);
+            g = Plane.allocate(width, height, storage);
+            b = Plane.allocate(width, height, storage);
+            reader.readPixels(r, g, b);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            Log.info("Read %s %sx%s in %.1f ms, %.1f MB/s", title, width, height,
+                    seconds * 1e3, reader.getFileSize() / 1e6 / seconds);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    public int[][] getR() {
+    public Plane getR() {
         return r;
     }
 
-    public int[][] getG() {
+    public Plane getG() {
         return g;
     }
 
-    public int[][] getB() {
+    public Plane getB() {
         return b;
     }
 
-    public double[][] getY() {
+    public Plane getY() {
         return y;
     }
 
-    public double[][] getU() {
+    public Plane getU() {
         return u;
     }
 
-    public double[][] getV() {
+    public Plane getV() {
         return v;
     }
 
+    public Plane.Storage getStorage() {
+        return storage;
+    }
+
     public int getWidth() {
         return width;
     }
@@ -161,27 +139,27 @@ public class Image {
         return height;
     }
 
-    public void setR(int[][] r) {
+    public void setR(Plane r) {
         this.r = r;
     }
 
-    public void setG(int[][] g) {
+    public void setG(Plane g) {
         this.g = g;
     }
 
-    public void setB(int[][] b) {
+    public void setB(Plane b) {
         this.b = b;
     }
 
-    public void setY(double[][] y) {
+    public void setY(Plane y) {
         this.y = y;
     }
 
-    public void setU(double[][] u) {
+    public void setU(Plane u) {
         this.u = u;
     }
 
-    public void setV(double[][] v) {
+    public void setV(Plane v) {
         this.v = v;
     }
 }
@@ -0,0 +1,333 @@
+import java.util.Arrays;
+
+/**
+ * Fixed-point DCT with the integer arithmetic and rounding of libjpeg's islow transforms: 13 bit
+ * constants, 2 extra bits between the passes, and results descaled by adding half and shifting.
+ * <p>
+ * Quantization divides by the divisor with rounding of halves away from zero, as libjpeg does, through a
+ * precomputed integer reciprocal and a shift instead of a division. Every result depends only on the
+ * input integers, never on how a JVM or CPU rounds floating point. Samples are rounded to integers on the
+ * way in; reconstructed samples are rounded rather than truncated.
+ * <p>
+ * With this engine the codec works on integers end to end: {@link ColorConverter} switches to fixed point
+ * for integer planes, and the codecs keep samples in {@link Plane.Storage#BYTE} planes and coefficients in
+ * {@link Plane.Storage#SHORT} planes.
+ */
+public class IntegerDCT implements DCTEngine {
+    private static final int CONST_BITS = 13;
+    private static final int PASS1_BITS = 2;
+    // exact for any 16 bit divisor as long as the scaled coefficients of 8 bit samples stay under 2^14
+    private static final int RECIPROCAL_BITS = 38;
+
+    private static final int FIX_0_298631336 = 2446;
+    private static final int FIX_0_390180644 = 3196;
+    private static final int FIX_0_541196100 = 4433;
+    private static final int FIX_0_765366865 = 6270;
+    private static final int FIX_0_899976223 = 7373;
+    private static final int FIX_1_175875602 = 9633;
+    private static final int FIX_1_501321110 = 12299;
+    private static final int FIX_1_847759065 = 15137;
+    private static final int FIX_1_961570560 = 16069;
+    private static final int FIX_2_053119869 = 16819;
+    private static final int FIX_2_562915447 = 20995;
+    private static final int FIX_3_072711026 = 25172;
+
+    @Override
+    public boolean isFixedPoint() {
+        return true;
+    }
+
+    @Override
+    public void forwardDCT(double[] block) {
+        int[] data = load(block);
+        forward(data);
+        for (int i = 0; i < 64; i++) block[i] = data[i] / 8.0;
+    }
+
+    /**
+     * The reciprocals of the divisors times 8, the scale the forward transform leaves, scaled by
+     * 2^RECIPROCAL_BITS, followed by those 64 divisors; all integers below 2^53, so doubles hold them exactly.
+     */
+    @Override
+    public double[] quantizers(QuantizationTable table) {
+        double[] quantizers = new double[128];
+        for (int i = 0; i < 64; i++) {
+            long divisor = table.getDivisor(i) * 8L;
+            quantizers[i] = (1L << RECIPROCAL_BITS) / divisor + 1;
+            quantizers[64 + i] = divisor;
+        }
+        return quantizers;
+    }
+
+    @Override
+    public void forwardQuantized(double[] block, double[] quantizers) {
+        int[] data = load(block);
+        forward(data);
+        for (int i = 0; i < 64; i++) {
+            int sign = data[i] >> 31;
+            long magnitude = (data[i] ^ sign) - sign + ((long) quantizers[64 + i] >> 1);
+            int quotient = (int) (magnitude * (long) quantizers[i] >>> RECIPROCAL_BITS);
+            block[i] = (quotient ^ sign) - sign;
+        }
+    }
+
+    @Override
+    public void inverseDCT(double[] block) {
+        int[] data = load(block);
+        inverse(data);
+        for (int i = 0; i < 64; i++) block[i] = data[i];
+    }
+
+    @Override
+    public void inverseDequantized(double[] block, double[] dequantizers) {
+        int[] data = BlockScratch.get().integers;
+        for (int i = 0; i < 64; i++) data[i] = (int) block[i] * (int) dequantizers[i];
+        inverse(data);
+        for (int i = 0; i < 64; i++) block[i] = data[i];
+    }
+
+    @Override
+    public void inverseDequantized(double[] block, double[] dequantizers, int end) {
+        if (end == 1) {
+            Arrays.fill(block, descale((int) block[0] * (int) dequantizers[0] << PASS1_BITS, PASS1_BITS + 3));
+            return;
+        }
+        if (end > LOW_FREQUENCY_END) {
+            inverseDequantized(block, dequantizers);
+            return;
+        }
+        int[] data = BlockScratch.get().integers;
+        for (int i = 0; i < 64; i++) data[i] = (int) block[i] * (int) dequantizers[i];
+        inverseLow(data);
+        for (int i = 0; i < 64; i++) block[i] = data[i];
+    }
+
+    private static int[] load(double[] block) {
+        int[] data = BlockScratch.get().integers;
+        for (int i = 0; i < 64; i++) data[i] = (int) Math.floor(block[i] + 0.5);
+        return data;
+    }
+
+    private static int descale(int value, int bits) {
+        return value + (1 << (bits - 1)) >> bits;
+    }
+
+    // jfdctint: rows, then columns; the output is 8 times the true DCT
+    private static void forward(int[] data) {
+        for (int row = 0; row < 64; row += 8) {
+            int tmp0 = data[row] + data[row + 7], tmp7 = data[row] - data[row + 7];
+            int tmp1 = data[row + 1] + data[row + 6], tmp6 = data[row + 1] - data[row + 6];
+            int tmp2 = data[row + 2] + data[row + 5], tmp5 = data[row + 2] - data[row + 5];
+            int tmp3 = data[row + 3] + data[row + 4], tmp4 = data[row + 3] - data[row + 4];
+
+            int tmp10 = tmp0 + tmp3, tmp13 = tmp0 - tmp3;
+            int tmp11 = tmp1 + tmp2, tmp12 = tmp1 - tmp2;
+
+            data[row] = tmp10 + tmp11 << PASS1_BITS;
+            data[row + 4] = tmp10 - tmp11 << PASS1_BITS;
+            int z1 = (tmp12 + tmp13) * FIX_0_541196100;
+            data[row + 2] = descale(z1 + tmp13 * FIX_0_765366865, CONST_BITS - PASS1_BITS);
+            data[row + 6] = descale(z1 - tmp12 * FIX_1_847759065, CONST_BITS - PASS1_BITS);
+
+            forwardOdd(data, row, 1, tmp4, tmp5, tmp6, tmp7, CONST_BITS - PASS1_BITS);
+        }
+        for (int column = 0; column < 8; column++) {
+            int tmp0 = data[column] + data[column + 56], tmp7 = data[column] - data[column + 56];
+            int tmp1 = data[column + 8] + data[column + 48], tmp6 = data[column + 8] - data[column + 48];
+            int tmp2 = data[column + 16] + data[column + 40], tmp5 = data[column + 16] - data[column + 40];
+            int tmp3 = data[column + 24] + data[column + 32], tmp4 = data[column + 24] - data[column + 32];
+
+            int tmp10 = tmp0 + tmp3, tmp13 = tmp0 - tmp3;
+            int tmp11 = tmp1 + tmp2, tmp12 = tmp1 - tmp2;
+
+            data[column] = descale(tmp10 + tmp11, PASS1_BITS);
+            data[column + 32] = descale(tmp10 - tmp11, PASS1_BITS);
+            int z1 = (tmp12 + tmp13) * FIX_0_541196100;
+            data[column + 16] = descale(z1 + tmp13 * FIX_0_765366865, CONST_BITS + PASS1_BITS);
+            data[column + 48] = descale(z1 - tmp12 * FIX_1_847759065, CONST_BITS + PASS1_BITS);
+
+            forwardOdd(data, column, 8, tmp4, tmp5, tmp6, tmp7, CONST_BITS + PASS1_BITS);
+        }
+    }
+
+    private static void forwardOdd(int[] data, int offset, int step, int tmp4, int tmp5, int tmp6, int tmp7, int shift) {
+        int z1 = tmp4 + tmp7;
+        int z2 = tmp5 + tmp6;
+        int z3 = tmp4 + tmp6;
+        int z4 = tmp5 + tmp7;
+        int z5 = (z3 + z4) * FIX_1_175875602;
+        tmp4 *= FIX_0_298631336;
+        tmp5 *= FIX_2_053119869;
+        tmp6 *= FIX_3_072711026;
+        tmp7 *= FIX_1_501321110;
+        z1 *= -FIX_0_899976223;
+        z2 *= -FIX_2_562915447;
+        z3 = z3 * -FIX_1_961570560 + z5;
+        z4 = z4 * -FIX_0_390180644 + z5;
+        data[offset + 7 * step] = descale(tmp4 + z1 + z3, shift);
+        data[offset + 5 * step] = descale(tmp5 + z2 + z4, shift);
+        data[offset + 3 * step] = descale(tmp6 + z2 + z3, shift);
+        data[offset + step] = descale(tmp7 + z1 + z4, shift);
+    }
+
+    // jidctint: columns, then rows; the second pass also removes the factor of 8
+    private static void inverse(int[] data) {
+        for (int column = 0; column < 8; column++) {
+            int c0 = data[column], c1 = data[column + 8], c2 = data[column + 16], c3 = data[column + 24];
+            int c4 = data[column + 32], c5 = data[column + 40], c6 = data[column + 48], c7 = data[column + 56];
+            if ((c1 | c2 | c3 | c4 | c5 | c6 | c7) == 0) {
+                int dc = c0 << PASS1_BITS;
+                for (int k = 0; k < 64; k += 8) data[column + k] = dc;
+                continue;
+            }
+
+            int z1 = (c2 + c6) * FIX_0_541196100;
+            int tmp2 = z1 - c6 * FIX_1_847759065;
+            int tmp3 = z1 + c2 * FIX_0_765366865;
+            int tmp0 = c0 + c4 << CONST_BITS;
+            int tmp1 = c0 - c4 << CONST_BITS;
+
+            int tmp10 = tmp0 + tmp3, tmp13 = tmp0 - tmp3;
+            int tmp11 = tmp1 + tmp2, tmp12 = tmp1 - tmp2;
+
+            z1 = c7 + c1;
+            int z2 = c5 + c3;
+            int z3 = c7 + c3;
+            int z4 = c5 + c1;
+            int z5 = (z3 + z4) * FIX_1_175875602;
+            z1 *= -FIX_0_899976223;
+            z2 *= -FIX_2_562915447;
+            z3 = z3 * -FIX_1_961570560 + z5;
+            z4 = z4 * -FIX_0_390180644 + z5;
+            tmp0 = c7 * FIX_0_298631336 + z1 + z3;
+            tmp1 = c5 * FIX_2_053119869 + z2 + z4;
+            tmp2 = c3 * FIX_3_072711026 + z2 + z3;
+            tmp3 = c1 * FIX_1_501321110 + z1 + z4;
+
+            data[column] = descale(tmp10 + tmp3, CONST_BITS - PASS1_BITS);
+            data[column + 56] = descale(tmp10 - tmp3, CONST_BITS - PASS1_BITS);
+            data[column + 8] = descale(tmp11 + tmp2, CONST_BITS - PASS1_BITS);
+            data[column + 48] = descale(tmp11 - tmp2, CONST_BITS - PASS1_BITS);
+            data[column + 16] = descale(tmp12 + tmp1, CONST_BITS - PASS1_BITS);
+            data[column + 40] = descale(tmp12 - tmp1, CONST_BITS - PASS1_BITS);
+            data[column + 24] = descale(tmp13 + tmp0, CONST_BITS - PASS1_BITS);
+            data[column + 32] = descale(tmp13 - tmp0, CONST_BITS - PASS1_BITS);
+        }
+        for (int row = 0; row < 64; row += 8) {
+            int c0 = data[row], c1 = data[row + 1], c2 = data[row + 2], c3 = data[row + 3];
+            int c4 = data[row + 4], c5 = data[row + 5], c6 = data[row + 6], c7 = data[row + 7];
+            if ((c1 | c2 | c3 | c4 | c5 | c6 | c7) == 0) {
+                int dc = descale(c0, PASS1_BITS + 3);
+                for (int k = 0; k < 8; k += 1) data[row + k] = dc;
+                continue;
+            }
+
+            int z1 = (c2 + c6) * FIX_0_541196100;
+            int tmp2 = z1 - c6 * FIX_1_847759065;
+            int tmp3 = z1 + c2 * FIX_0_765366865;
+            int tmp0 = c0 + c4 << CONST_BITS;
+            int tmp1 = c0 - c4 << CONST_BITS;
+
+            int tmp10 = tmp0 + tmp3, tmp13 = tmp0 - tmp3;
+            int tmp11 = tmp1 + tmp2, tmp12 = tmp1 - tmp2;
+
+            z1 = c7 + c1;
+            int z2 = c5 + c3;
+            int z3 = c7 + c3;
+            int z4 = c5 + c1;
+            int z5 = (z3 + z4) * FIX_1_175875602;
+            z1 *= -FIX_0_899976223;
+            z2 *= -FIX_2_562915447;
+            z3 = z3 * -FIX_1_961570560 + z5;
+            z4 = z4 * -FIX_0_390180644 + z5;
+            tmp0 = c7 * FIX_0_298631336 + z1 + z3;
+            tmp1 = c5 * FIX_2_053119869 + z2 + z4;
+            tmp2 = c3 * FIX_3_072711026 + z2 + z3;
+            tmp3 = c1 * FIX_1_501321110 + z1 + z4;
+
+            data[row] = descale(tmp10 + tmp3, CONST_BITS + PASS1_BITS + 3);
+            data[row + 7] = descale(tmp10 - tmp3, CONST_BITS + PASS1_BITS + 3);
+            data[row + 1] = descale(tmp11 + tmp2, CONST_BITS + PASS1_BITS + 3);
+            data[row + 6] = descale(tmp11 - tmp2, CONST_BITS + PASS1_BITS + 3);
+            data[row + 2] = descale(tmp12 + tmp1, CONST_BITS + PASS1_BITS + 3);
+            data[row + 5] = descale(tmp12 - tmp1, CONST_BITS + PASS1_BITS + 3);
+            data[row + 3] = descale(tmp13 + tmp0, CONST_BITS + PASS1_BITS + 3);
+            data[row + 4] = descale(tmp13 - tmp0, CONST_BITS + PASS1_BITS + 3);
+        }
+    }
+
+    // inverse for coefficients only in the top left 4x4 corner: the terms of the others are dropped and
+    // columns 4 to 7, all zero, stay zero
+    private static void inverseLow(int[] data) {
+        for (int column = 0; column < 4; column++) {
+            int c0 = data[column], c1 = data[column + 8], c2 = data[column + 16], c3 = data[column + 24];
+            if ((c1 | c2 | c3) == 0) {
+                int dc = c0 << PASS1_BITS;
+                for (int k = 0; k < 64; k += 8) data[column + k] = dc;
+                continue;
+            }
+
+            int z1 = c2 * FIX_0_541196100;
+            int tmp2 = z1;
+            int tmp3 = z1 + c2 * FIX_0_765366865;
+            int tmp0 = c0 << CONST_BITS;
+
+            int tmp10 = tmp0 + tmp3, tmp13 = tmp0 - tmp3;
+            int tmp11 = tmp0 + tmp2, tmp12 = tmp0 - tmp2;
+
+            int z5 = (c3 + c1) * FIX_1_175875602;
+            z1 = c1 * -FIX_0_899976223;
+            int z2 = c3 * -FIX_2_562915447;
+            int z3 = c3 * -FIX_1_961570560 + z5;
+            int z4 = c1 * -FIX_0_390180644 + z5;
+            tmp0 = z1 + z3;
+            int tmp1 = z2 + z4;
+            tmp2 = c3 * FIX_3_072711026 + z2 + z3;
+            tmp3 = c1 * FIX_1_501321110 + z1 + z4;
+
+            data[column] = descale(tmp10 + tmp3, CONST_BITS - PASS1_BITS);
+            data[column + 56] = descale(tmp10 - tmp3, CONST_BITS - PASS1_BITS);
+            data[column + 8] = descale(tmp11 + tmp2, CONST_BITS - PASS1_BITS);
+            data[column + 48] = descale(tmp11 - tmp2, CONST_BITS - PASS1_BITS);
+            data[column + 16] = descale(tmp12 + tmp1, CONST_BITS - PASS1_BITS);
+            data[column + 40] = descale(tmp12 - tmp1, CONST_BITS - PASS1_BITS);
+            data[column + 24] = descale(tmp13 + tmp0, CONST_BITS - PASS1_BITS);
+            data[column + 32] = descale(tmp13 - tmp0, CONST_BITS - PASS1_BITS);
+        }
+        for (int row = 0; row < 64; row += 8) {
+            int c0 = data[row], c1 = data[row + 1], c2 = data[row + 2], c3 = data[row + 3];
+            if ((c1 | c2 | c3) == 0) {
+                int dc = descale(c0, PASS1_BITS + 3);
+                for (int k = 0; k < 8; k += 1) data[row + k] = dc;
+                continue;
+            }
+
+            int z1 = c2 * FIX_0_541196100;
+            int tmp2 = z1;
+            int tmp3 = z1 + c2 * FIX_0_765366865;
+            int tmp0 = c0 << CONST_BITS;
+
+            int tmp10 = tmp0 + tmp3, tmp13 = tmp0 - tmp3;
+            int tmp11 = tmp0 + tmp2, tmp12 = tmp0 - tmp2;
+
+            int z5 = (c3 + c1) * FIX_1_175875602;
+            z1 = c1 * -FIX_0_899976223;
+            int z2 = c3 * -FIX_2_562915447;
+            int z3 = c3 * -FIX_1_961570560 + z5;
+            int z4 = c1 * -FIX_0_390180644 + z5;
+            tmp0 = z1 + z3;
+            int tmp1 = z2 + z4;
+            tmp2 = c3 * FIX_3_072711026 + z2 + z3;
+            tmp3 = c1 * FIX_1_501321110 + z1 + z4;
+
+            data[row] = descale(tmp10 + tmp3, CONST_BITS + PASS1_BITS + 3);
+            data[row + 7] = descale(tmp10 - tmp3, CONST_BITS + PASS1_BITS + 3);
+            data[row + 1] = descale(tmp11 + tmp2, CONST_BITS + PASS1_BITS + 3);
+            data[row + 6] = descale(tmp11 - tmp2, CONST_BITS + PASS1_BITS + 3);
+            data[row + 2] = descale(tmp12 + tmp1, CONST_BITS + PASS1_BITS + 3);
+            data[row + 5] = descale(tmp12 - tmp1, CONST_BITS + PASS1_BITS + 3);
+            data[row + 3] = descale(tmp13 + tmp0, CONST_BITS + PASS1_BITS + 3);
+            data[row + 4] = descale(tmp13 - tmp0, CONST_BITS + PASS1_BITS + 3);
+        }
+    }
+}
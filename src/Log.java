@@ -0,0 +1,18 @@
+/**
+ * Progress messages on standard output, off unless started with {@code -Dcodec.log=true}.
+ */
+final class Log {
+    private static final boolean ENABLED = Boolean.getBoolean("codec.log");
+
+    private Log() {
+    }
+
+    static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    static void info(String format, Object... args) {
+        if (ENABLED)
+            System.out.printf(format + "%n", args);
+    }
+}
@@ -1,10 +1,44 @@
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Main {
-    public static void main(String[] args) throws IOException {
-        Image image = new Image("images/not_working/nt-P3.ppm");
-        ImageProcessor imageProcessor = new ImageProcessor(image);
-        Image finalImage = imageProcessor.getImage().convertImageYUVtoRGB();
-        finalImage.writeToPPM("final");
+    /**
+     * Without arguments, runs the demo image through {@link ImageProcessor}, dumping its blocks to output/.
+     * With arguments, {@code <output directory> <file or directory>...} transcodes every .ppm given to .yuvj.
+     * Prints the {@link Metrics} report at the end when they are enabled.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            CodecSettings settings = new CodecSettings();
+            Image image = new Image("images/not_working/nt-P3.ppm", settings.getSampleStorage());
+            settings.setBlockDumpDirectory(Paths.get("output"));
+            ImageProcessor imageProcessor = new ImageProcessor(image, settings);
+            Image finalImage = imageProcessor.getImage().convertImageYUVtoRGB();
+            finalImage.writeToPPM("final");
+            printMetrics();
+            return;
+        }
+        if (args.length < 2) {
+            System.err.println("Usage: Main <output directory> <file or directory>...");
+            System.exit(2);
+        }
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++)
+            inputs.add(Paths.get(args[i]));
+        List<BatchTranscoder.Failure> failures = new BatchTranscoder(new CodecSettings())
+                .transcode(BatchTranscoder.jobs(inputs, Paths.get(args[0])));
+        for (BatchTranscoder.Failure failure : failures)
+            System.err.println("Failed to transcode " + failure.getJob().getInput() + ": " + failure.getError());
+        printMetrics();
+        if (!failures.isEmpty())
+            System.exit(1);
+    }
+
+    private static void printMetrics() {
+        if (Metrics.isEnabled())
+            System.out.print(Metrics.report());
     }
 }
@@ -0,0 +1,305 @@
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-stage timings of the codec: how often each stage ran, a histogram of how long a run took, the units
+ * (pixels or blocks) it processed, the bytes it read and wrote and what it allocated.
+ * <p>
+ * Off by default, when {@link #start} costs a field read and returns a shared no-op span. Enable it with
+ * {@link #setEnabled} or {@code -Dcodec.metrics=true}; {@link #setJfrEvents} or {@code -Dcodec.jfr=true}
+ * additionally emits a {@link StageEvent} per span for Flight Recorder. Spans cover a call, a strip or a
+ * block row, never a single block, so recording stays cheap next to the work it measures.
+ * <p>
+ * Block splitting, the DCT and quantization run as one fused pass per block and are timed together as
+ * {@link Stage#FORWARD_TRANSFORM}; likewise dequantization, the IDCT and reassembly as
+ * {@link Stage#INVERSE_TRANSFORM}. The JMH benchmarks time them apart. {@link RegionDecoder} transforms
+ * blocks as they are decoded, so there the inverse transform is recorded as {@link Stage#ENTROPY_DECODE}.
+ */
+public final class Metrics {
+    public enum Stage {
+        READ("pixels"),
+        COLOR_CONVERT("pixels"),
+        SUBSAMPLE("samples"),
+        FORWARD_TRANSFORM("blocks"),
+        ENTROPY_ENCODE("blocks"),
+        ENTROPY_DECODE("blocks"),
+        INVERSE_TRANSFORM("blocks"),
+        UPSAMPLE("samples"),
+        WRITE("pixels");
+
+        private final String unit;
+
+        Stage(String unit) {
+            this.unit = unit;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+    private static final Map<Stage, Recorder> RECORDERS = new EnumMap<>(Stage.class);
+    private static final Span NOOP = new Span(null);
+
+    private static volatile boolean enabled = Boolean.getBoolean("codec.metrics");
+    private static volatile boolean jfrEvents = Boolean.getBoolean("codec.jfr");
+
+    static {
+        for (Stage stage : Stage.values())
+            RECORDERS.put(stage, new Recorder());
+    }
+
+    private Metrics() {
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled())
+                return threads;
+        }
+        return null;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    public static boolean isJfrEvents() {
+        return jfrEvents;
+    }
+
+    /**
+     * Also commits a {@link StageEvent} for every span while metrics are enabled.
+     */
+    public static void setJfrEvents(boolean jfrEvents) {
+        Metrics.jfrEvents = jfrEvents;
+    }
+
+    /**
+     * Starts timing one run of stage on the calling thread; close the span on the same thread.
+     */
+    public static Span start(Stage stage) {
+        return enabled ? new Span(stage) : NOOP;
+    }
+
+    public static Snapshot get(Stage stage) {
+        return RECORDERS.get(stage).snapshot(stage);
+    }
+
+    public static void reset() {
+        for (Recorder recorder : RECORDERS.values())
+            recorder.reset();
+    }
+
+    /**
+     * One line per stage that ran since the last {@link #reset}.
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder(String.format("%-18s %8s %10s %9s %9s %14s %9s %9s %9s%n",
+                "stage", "runs", "total ms", "p50 us", "p99 us", "units/s", "MB in", "MB out", "MB alloc"));
+        for (Stage stage : Stage.values()) {
+            Snapshot snapshot = get(stage);
+            if (snapshot.getCount() == 0)
+                continue;
+            report.append(String.format("%-18s %8d %10.1f %9.1f %9.1f %14s %9.1f %9.1f %9.1f%n", stage,
+                    snapshot.getCount(), snapshot.getTotalNanos() / 1e6,
+                    snapshot.getPercentileNanos(0.5) / 1e3, snapshot.getPercentileNanos(0.99) / 1e3,
+                    String.format("%.3g %s", snapshot.getUnitsPerSecond(), stage.getUnit()),
+                    snapshot.getBytesIn() / 1e6, snapshot.getBytesOut() / 1e6, snapshot.getAllocatedBytes() / 1e6));
+        }
+        return report.toString();
+    }
+
+    /**
+     * A run of a stage being timed. The counters added before {@link #close} are recorded with it.
+     */
+    public static final class Span implements AutoCloseable {
+        private final Stage stage;
+        private final long start;
+        private final long allocated;
+        private final StageEvent event;
+        private long units;
+        private long bytesIn;
+        private long bytesOut;
+
+        private Span(Stage stage) {
+            this.stage = stage;
+            if (stage == null) {
+                start = 0;
+                allocated = 0;
+                event = null;
+                return;
+            }
+            if (jfrEvents) {
+                event = new StageEvent();
+                event.begin();
+            } else {
+                event = null;
+            }
+            allocated = THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+            start = System.nanoTime();
+        }
+
+        public Span units(long units) {
+            if (stage != null)
+                this.units += units;
+            return this;
+        }
+
+        public Span bytesIn(long bytes) {
+            if (stage != null)
+                this.bytesIn += bytes;
+            return this;
+        }
+
+        public Span bytesOut(long bytes) {
+            if (stage != null)
+                this.bytesOut += bytes;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            if (stage == null)
+                return;
+            long nanos = System.nanoTime() - start;
+            long allocatedBytes = THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes() - allocated;
+            RECORDERS.get(stage).record(nanos, units, bytesIn, bytesOut, allocatedBytes);
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.stage = stage.name();
+                    event.units = units;
+                    event.bytesIn = bytesIn;
+                    event.bytesOut = bytesOut;
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    /**
+     * The totals of one stage at the time it was taken.
+     */
+    public static final class Snapshot {
+        private final Stage stage;
+        private final long count;
+        private final long totalNanos;
+        private final long units;
+        private final long bytesIn;
+        private final long bytesOut;
+        private final long allocatedBytes;
+        private final long[] histogram;
+
+        private Snapshot(Stage stage, long count, long totalNanos, long units, long bytesIn, long bytesOut,
+                         long allocatedBytes, long[] histogram) {
+            this.stage = stage;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.units = units;
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+            this.allocatedBytes = allocatedBytes;
+            this.histogram = histogram;
+        }
+
+        public Stage getStage() {
+            return stage;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getUnits() {
+            return units;
+        }
+
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        public long getBytesOut() {
+            return bytesOut;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public double getUnitsPerSecond() {
+            return totalNanos == 0 ? 0 : units * 1e9 / totalNanos;
+        }
+
+        /**
+         * Runs that took [2^(i-1), 2^i) nanoseconds are counted in bucket i, bucket 0 holding the runs under 1 ns.
+         */
+        public long[] getHistogram() {
+            return histogram.clone();
+        }
+
+        /**
+         * Upper bound of the histogram bucket holding the given fraction of the runs, within a factor of two.
+         */
+        public long getPercentileNanos(double fraction) {
+            long target = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= target && seen > 0)
+                    return i == 0 ? 0 : i >= 63 ? Long.MAX_VALUE : 1L << i;
+            }
+            return 0;
+        }
+    }
+
+    private static final class Recorder {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder units = new LongAdder();
+        private final LongAdder bytesIn = new LongAdder();
+        private final LongAdder bytesOut = new LongAdder();
+        private final LongAdder allocated = new LongAdder();
+        private final AtomicLongArray histogram = new AtomicLongArray(64);
+
+        void record(long nanos, long units, long bytesIn, long bytesOut, long allocated) {
+            count.increment();
+            this.nanos.add(nanos);
+            this.units.add(units);
+            this.bytesIn.add(bytesIn);
+            this.bytesOut.add(bytesOut);
+            this.allocated.add(allocated);
+            histogram.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+        }
+
+        Snapshot snapshot(Stage stage) {
+            long[] buckets = new long[histogram.length()];
+            for (int i = 0; i < buckets.length; i++) buckets[i] = histogram.get(i);
+            return new Snapshot(stage, count.sum(), nanos.sum(), units.sum(), bytesIn.sum(), bytesOut.sum(),
+                    allocated.sum(), buckets);
+        }
+
+        void reset() {
+            count.reset();
+            nanos.reset();
+            units.reset();
+            bytesIn.reset();
+            bytesOut.reset();
+            allocated.reset();
+            for (int i = 0; i < histogram.length(); i++) histogram.set(i, 0);
+        }
+    }
+}
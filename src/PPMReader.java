@@ -0,0 +1,203 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads ASCII (P3) and binary (P6) PPM files straight into {@link Plane}s.
+ * <p>
+ * The file is memory-mapped 64 MB at a time, the mapping following the rows as they are read, so inputs
+ * far over 2 GB can be streamed strip by strip. It is parsed byte by byte: header tokens may be separated by
+ * any whitespace and interleaved with # comments, P3 samples may share lines, and P6 samples may be 8 or 16 bit.
+ * Samples are scaled to the 0..255 range the codec works in when maxval is not 255.
+ */
+public class PPMReader {
+    private static final int WINDOW = 1 << 26;
+
+    private final String fileName;
+    private final long size;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+
+    private String magic;
+    private String comment;
+    private int width;
+    private int height;
+    private int maxValue;
+    private long pixelsOffset;
+    private byte[] row;
+
+    public PPMReader(String fileName) throws IOException {
+        this.fileName = fileName;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            size = channel.size();
+        }
+        map(0, 0);
+        readHeader();
+    }
+
+    // maps WINDOW bytes from offset, or length if that is more, as far as the file goes
+    private void map(long offset, int length) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(Math.max(WINDOW, length), size - offset));
+        }
+        windowStart = offset;
+    }
+
+    // the window holding the length bytes at offset, moved there unless it already holds them
+    private MappedByteBuffer locate(long offset, int length) throws IOException {
+        if (offset < windowStart || offset + length > windowStart + window.limit())
+            map(offset, length);
+        return window;
+    }
+
+    private byte byteAt(long offset) throws IOException {
+        return locate(offset, 1).get((int) (offset - windowStart));
+    }
+
+    private void readHeader() throws IOException {
+        if (size < 2 || byteAt(0) != 'P' || (byteAt(1) != '3' && byteAt(1) != '6'))
+            throw new IOException("Not a P3 or P6 PPM file: " + fileName);
+        magic = "P" + (char) byteAt(1);
+        position = 2;
+        width = nextNumber();
+        height = nextNumber();
+        maxValue = nextNumber();
+        if (width <= 0 || height <= 0 || maxValue <= 0 || maxValue > 65535)
+            throw new IOException(String.format("Invalid PPM header in %s: %s %s %s", fileName, width, height, maxValue));
+        // a single whitespace byte separates maxval from the raster
+        position++;
+        pixelsOffset = position;
+        if (isBinary() && pixelsOffset + (long) width * height * 3 * bytesPerSample() > size)
+            throw new IOException("Truncated PPM raster in " + fileName);
+    }
+
+    private void skipWhitespaceAndComments() throws IOException {
+        while (position < size) {
+            byte c = byteAt(position);
+            if (c == '#') {
+                long start = position + 1;
+                while (position < size && byteAt(position) != '\n' && byteAt(position) != '\r')
+                    position++;
+                if (comment == null) {
+                    byte[] text = new byte[(int) (position - start)];
+                    locate(start, text.length).get((int) (start - windowStart), text);
+                    comment = new String(text).trim();
+                }
+            } else if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0b) {
+                position++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private int nextNumber() throws IOException {
+        skipWhitespaceAndComments();
+        int value = 0;
+        int digits = 0;
+        while (position < size) {
+            int digit = byteAt(position) - '0';
+            if (digit < 0 || digit > 9)
+                break;
+            value = value * 10 + digit;
+            position++;
+            digits++;
+        }
+        if (digits == 0)
+            throw new IOException(String.format("Expected a number at byte %s of %s", position, fileName));
+        return value;
+    }
+
+    /**
+     * Decodes rows [fromLine, fromLine + lines) into the planes, writing them from plane line 0.
+     * Rows must be requested in order for P3 files.
+     */
+    public void readRows(int fromLine, int lines, Plane r, Plane g, Plane b) throws IOException {
+        try (Metrics.Span span = Metrics.start(Metrics.Stage.READ).units((long) lines * width)) {
+            if (isBinary()) {
+                readBinaryRows(fromLine, lines, r, g, b);
+                span.bytesIn((long) lines * width * 3 * bytesPerSample());
+            } else {
+                long start = position;
+                readAsciiRows(lines, r, g, b);
+                span.bytesIn(position - start);
+            }
+        }
+    }
+
+    public void readPixels(Plane r, Plane g, Plane b) throws IOException {
+        position = pixelsOffset;
+        readRows(0, height, r, g, b);
+    }
+
+    private void readBinaryRows(int fromLine, int lines, Plane r, Plane g, Plane b) throws IOException {
+        float scale = maxValue == 255 ? 1f : 255f / maxValue;
+        int rowBytes = width * 3 * bytesPerSample();
+        if (row == null || row.length != rowBytes)
+            row = new byte[rowBytes];
+        long offset = pixelsOffset + (long) fromLine * rowBytes;
+        for (int line = 0; line < lines; line++) {
+            long rowOffset = offset + (long) line * rowBytes;
+            locate(rowOffset, rowBytes).get((int) (rowOffset - windowStart), row);
+            if (maxValue < 256) {
+                for (int column = 0, p = 0; column < width; column++, p += 3) {
+                    r.set(line, column, (row[p] & 0xff) * scale);
+                    g.set(line, column, (row[p + 1] & 0xff) * scale);
+                    b.set(line, column, (row[p + 2] & 0xff) * scale);
+                }
+            } else {
+                for (int column = 0, p = 0; column < width; column++, p += 6) {
+                    r.set(line, column, ((row[p] & 0xff) << 8 | row[p + 1] & 0xff) * scale);
+                    g.set(line, column, ((row[p + 2] & 0xff) << 8 | row[p + 3] & 0xff) * scale);
+                    b.set(line, column, ((row[p + 4] & 0xff) << 8 | row[p + 5] & 0xff) * scale);
+                }
+            }
+        }
+    }
+
+    private void readAsciiRows(int lines, Plane r, Plane g, Plane b) throws IOException {
+        float scale = maxValue == 255 ? 1f : 255f / maxValue;
+        for (int line = 0; line < lines; line++) {
+            for (int column = 0; column < width; column++) {
+                r.set(line, column, nextNumber() * scale);
+                g.set(line, column, nextNumber() * scale);
+                b.set(line, column, nextNumber() * scale);
+            }
+        }
+    }
+
+    private int bytesPerSample() {
+        return maxValue < 256 ? 1 : 2;
+    }
+
+    public boolean isBinary() {
+        return magic.equals("P6");
+    }
+
+    public String getMagic() {
+        return magic;
+    }
+
+    public String getComment() {
+        return comment;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getMaxValue() {
+        return maxValue;
+    }
+
+    public long getFileSize() {
+        return size;
+    }
+}
@@ -0,0 +1,156 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Writes standard 8-bit PPM files, binary (P6) or ASCII (P3), through a pooled direct buffer and a
+ * {@link FileChannel}. Each row is formatted into a reusable byte array; no String is built per sample.
+ * Rows can be pushed in several calls, so a whole image never has to be held at once.
+ */
+public class PPMWriter implements Closeable, RowSink {
+    public enum Format {P3, P6}
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final ConcurrentLinkedQueue<ByteBuffer> BUFFERS = new ConcurrentLinkedQueue<>();
+
+    private final FileChannel channel;
+    private final Format format;
+    private final int width;
+    private ByteBuffer buffer;
+    private byte[] row;
+
+    public PPMWriter(String fileName, int width, int height, Format format, String comment) throws IOException {
+        this.width = width;
+        this.format = format;
+        this.channel = FileChannel.open(Paths.get(fileName),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = BUFFERS.poll();
+        if (buffer == null)
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.clear();
+
+        String header = (format == Format.P6 ? "P6\n" : "P3\n")
+                + (comment == null ? "" : "# " + comment + "\n")
+                + width + " " + height + "\n255\n";
+        buffer.put(header.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public static void write(String fileName, Plane r, Plane g, Plane b, Format format, String comment) throws IOException {
+        try (PPMWriter writer = new PPMWriter(fileName, r.getWidth(), r.getHeight(), format, comment)) {
+            writer.writeRows(r, g, b, 0, r.getHeight());
+        }
+    }
+
+    /**
+     * Appends plane lines [fromLine, fromLine + lines), clamping samples to 0..255.
+     */
+    public void writeRows(Plane r, Plane g, Plane b, int fromLine, int lines) throws IOException {
+        // at most "255 255 255\n" per pixel
+        if (row == null)
+            row = new byte[width * 12];
+        try (Metrics.Span span = Metrics.start(Metrics.Stage.WRITE).units((long) lines * width)) {
+            for (int line = fromLine; line < fromLine + lines; line++) {
+                int length = formatRow(r, g, b, line);
+                writePacked(row, 0, length);
+                span.bytesOut(length);
+            }
+        }
+    }
+
+    private int formatRow(Plane r, Plane g, Plane b, int line) {
+        int p = 0;
+        for (int column = 0; column < width; column++) {
+            int red = clamp(r.get(line, column));
+            int green = clamp(g.get(line, column));
+            int blue = clamp(b.get(line, column));
+            if (format == Format.P6) {
+                row[p++] = (byte) red;
+                row[p++] = (byte) green;
+                row[p++] = (byte) blue;
+            } else {
+                p = putDigits(red, p);
+                row[p++] = ' ';
+                p = putDigits(green, p);
+                row[p++] = ' ';
+                p = putDigits(blue, p);
+                row[p++] = '\n';
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Appends one line of packed RGB bytes, written out in the format of the file.
+     */
+    @Override
+    public void writeRow(byte[] rgb, int offset, int length) throws IOException {
+        if (format == Format.P6) {
+            writePacked(rgb, offset, length);
+            return;
+        }
+        if (row == null)
+            row = new byte[width * 12];
+        int p = 0;
+        for (int i = offset; i < offset + length; i += 3) {
+            p = putDigits(rgb[i] & 0xff, p);
+            row[p++] = ' ';
+            p = putDigits(rgb[i + 1] & 0xff, p);
+            row[p++] = ' ';
+            p = putDigits(rgb[i + 2] & 0xff, p);
+            row[p++] = '\n';
+        }
+        writePacked(row, 0, p);
+    }
+
+    /**
+     * Appends bytes to the output as they are, without any formatting: packed samples for P6, or text a
+     * caller has already formatted for P3. Callers decide whether the bytes fit the format.
+     */
+    public void writePacked(byte[] rgb, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!buffer.hasRemaining())
+                drain();
+            int chunk = Math.min(length, buffer.remaining());
+            buffer.put(rgb, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    private static int clamp(float value) {
+        int sample = (int) value;
+        return sample < 0 ? 0 : Math.min(sample, 255);
+    }
+
+    private int putDigits(int value, int p) {
+        if (value >= 100)
+            row[p++] = (byte) ('0' + value / 100);
+        if (value >= 10)
+            row[p++] = (byte) ('0' + value / 10 % 10);
+        row[p++] = (byte) ('0' + value % 10);
+        return p;
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            channel.close();
+            BUFFERS.offer(buffer);
+            buffer = null;
+        }
+    }
+}
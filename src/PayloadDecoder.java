@@ -0,0 +1,146 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Decodes an entropy coded payload into Y, U and V coefficient planes, U and V at the resolution of the chroma
+ * mode. MCUs are numbered in raster order and
+ * every restart interval starts at its own payload offset with fresh DC prediction, so intervals are decoded
+ * independently, as parallel tasks, each with its own reader and predictors.
+ * <p>
+ * The payload is only read, never modified: it can be decoded again, and by several decoders at once.
+ * <p>
+ * In a delta frame blocks left as they were in the frame before are not decoded at all, so the coefficient
+ * planes must hold that frame.
+ */
+public class PayloadDecoder {
+    private final ByteBuffer payload;
+    private final int[] restarts;
+    private final int restartInterval;
+    private final EntropyCoder coder;
+    private final ChromaMode chromaMode;
+    private final int mcusPerRow;
+    private final int mcus;
+    private final boolean delta;
+
+    public PayloadDecoder(ByteBuffer payload, int[] restarts, int restartInterval, EntropyCoder coder,
+                          ChromaMode chromaMode, int mcusPerRow, int mcuRows) {
+        this(payload, restarts, restartInterval, coder, chromaMode, mcusPerRow, mcuRows, false);
+    }
+
+    /**
+     * @param restarts        payload offset of every restart interval; ignored when restartInterval is 0
+     * @param restartInterval MCUs per interval, 0 when the payload is a single interval
+     * @param delta           whether the payload is a delta frame, with a skip flag before every block
+     */
+    public PayloadDecoder(ByteBuffer payload, int[] restarts, int restartInterval, EntropyCoder coder,
+                          ChromaMode chromaMode, int mcusPerRow, int mcuRows, boolean delta) {
+        this.payload = payload;
+        this.delta = delta;
+        this.coder = coder;
+        this.chromaMode = chromaMode;
+        this.mcusPerRow = mcusPerRow;
+        this.mcus = mcusPerRow * mcuRows;
+        if (restartInterval == 0) {
+            this.restarts = new int[]{0};
+            this.restartInterval = Math.max(mcus, 1);
+        } else {
+            if (restarts.length != (mcus + restartInterval - 1) / restartInterval)
+                throw new IllegalArgumentException(String.format("%s restarts for %s MCUs in intervals of %s",
+                        restarts.length, mcus, restartInterval));
+            this.restarts = restarts;
+            this.restartInterval = restartInterval;
+        }
+    }
+
+    public int getIntervalCount() {
+        return restarts.length;
+    }
+
+    public int getRestartInterval() {
+        return restartInterval;
+    }
+
+    /**
+     * Receives the decoded blocks, with the position of their top left sample in the plane of the component.
+     * The block is scratch owned by the decoding thread: it may be modified, but not kept once accept returns.
+     * Its coefficients are zero from the end-th on in zig-zag order, end being 1 for a DC-only block. A block
+     * that a delta frame leaves as it was comes with end 0 and nothing in block.
+     */
+    public interface BlockSink {
+        void accept(int component, int line, int column, double[] block, int end);
+    }
+
+    public int getIntervalOf(int mcu) {
+        return mcu / restartInterval;
+    }
+
+    public void decode(ForkJoinPool pool, Plane[] coefficients) {
+        decode(pool, coefficients, null);
+    }
+
+    /**
+     * Like {@link #decode(ForkJoinPool, Plane[])}, also storing the end of every block in ends, one entry per
+     * block of each component in raster order, for {@link BlockTransform#inverseRow(Plane, Plane, int, byte[])}.
+     * ends may be null.
+     */
+    public void decode(ForkJoinPool pool, Plane[] coefficients, byte[][] ends) {
+        pool.invoke(new BlockRowTask(0, restarts.length, 1, interval -> decodeInterval(interval, coefficients, ends)));
+    }
+
+    /**
+     * Decodes the MCUs of one restart interval into their blocks of the coefficient planes.
+     */
+    public void decodeInterval(int interval, Plane[] coefficients) {
+        decodeInterval(interval, coefficients, null);
+    }
+
+    public void decodeInterval(int interval, Plane[] coefficients, byte[][] ends) {
+        decodeInterval(interval, mcus - 1, new boolean[3], (component, line, column, block, end) -> {
+            if (end > 0)
+                coefficients[component].write(line, column, 8, block);
+            if (ends != null)
+                ends[component][line / 8 * (coefficients[component].getWidth() / 8) + column / 8] = (byte) end;
+        });
+    }
+
+    /**
+     * Decodes one restart interval into sink, stopping after lastMcu. Where dcOnly[component] is set only
+     * block[0] is decoded for that component. The time spent in sink is recorded as entropy decoding.
+     */
+    public void decodeInterval(int interval, int lastMcu, boolean[] dcOnly, BlockSink sink) {
+        int end = interval + 1 < restarts.length ? restarts[interval + 1] : payload.limit();
+        BitReader reader = new BitReader(payload, restarts[interval], end);
+        EntropyCoder intervalCoder = coder.copy();
+        double[] block = BlockScratch.get().block;
+
+        int horizontal = chromaMode.getHorizontal();
+        int vertical = chromaMode.getVertical();
+        int first = interval * restartInterval;
+        int last = Math.min(Math.min(mcus - 1, lastMcu), (interval + 1) * restartInterval - 1);
+        try (Metrics.Span span = Metrics.start(Metrics.Stage.ENTROPY_DECODE)) {
+            span.units((long) Math.max(0, last - first + 1) * chromaMode.getBlocksPerMcu()).bytesIn(end - restarts[interval]);
+            for (int mcu = first; mcu <= last; mcu++) {
+                int line = mcu / mcusPerRow * 8;
+                int column = mcu % mcusPerRow * 8;
+                for (int i = 0; i < vertical; i++)
+                    for (int j = 0; j < horizontal; j++) {
+                        int blockEnd = decodeBlock(reader, intervalCoder, 0, dcOnly[0], block);
+                        sink.accept(0, line * vertical + i * 8, column * horizontal + j * 8, block, blockEnd);
+                    }
+                for (int component = 1; component < 3; component++) {
+                    int blockEnd = decodeBlock(reader, intervalCoder, component, dcOnly[component], block);
+                    sink.accept(component, line, column, block, blockEnd);
+                }
+            }
+        }
+    }
+
+    private int decodeBlock(BitReader reader, EntropyCoder coder, int component, boolean dcOnly, double[] block) {
+        if (delta && reader.read(1) == 1)
+            return 0;
+        if (!dcOnly)
+            return coder.decodeBlock(reader, component, block);
+        block[0] = coder.decodeDC(reader, component);
+        return 1;
+    }
+}
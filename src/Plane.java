@@ -0,0 +1,456 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * One channel of samples stored row-major in a single flat buffer: sample (line, column) lives at
+ * {@code line * stride + column}. Backed by a float[], a direct (off-heap) float buffer, or, for the
+ * fixed-point pipeline, a byte[] of 0..255 samples or a short[] of coefficients. Integer planes round the
+ * floats they are given to the nearest integer and clamp them to their range.
+ */
+public abstract class Plane {
+    public enum Storage {
+        HEAP(false, Float.BYTES), DIRECT(false, Float.BYTES), BYTE(true, 1), SHORT(true, Short.BYTES);
+
+        private final boolean integer;
+        private final int sampleSize;
+
+        Storage(boolean integer, int sampleSize) {
+            this.integer = integer;
+            this.sampleSize = sampleSize;
+        }
+
+        public boolean isInteger() {
+            return integer;
+        }
+
+        /**
+         * Bytes a sample takes.
+         */
+        public int getSampleSize() {
+            return sampleSize;
+        }
+    }
+
+    protected final int width;
+    protected final int height;
+    protected final int stride;
+
+    protected Plane(int width, int height, int stride) {
+        this.width = width;
+        this.height = height;
+        this.stride = stride;
+    }
+
+    public static Plane allocate(int width, int height, Storage storage) {
+        switch (storage) {
+            case DIRECT:
+                return new DirectPlane(width, height);
+            case BYTE:
+                return new BytePlane(width, height);
+            case SHORT:
+                return new ShortPlane(width, height);
+            default:
+                return new HeapPlane(width, height);
+        }
+    }
+
+    /**
+     * Returns plane when it already has that size and storage, so scratch planes can be reused, and a new
+     * plane otherwise. A reused plane keeps its old samples.
+     */
+    static Plane recycle(Plane plane, int width, int height, Storage storage) {
+        if (plane != null && plane.width == width && plane.height == height && plane.getStorage() == storage)
+            return plane;
+        return allocate(width, height, storage);
+    }
+
+    public static Plane allocate(int width, int height) {
+        return new HeapPlane(width, height);
+    }
+
+    public abstract Storage getStorage();
+
+    public abstract float get(int line, int column);
+
+    public abstract void set(int line, int column, float value);
+
+    /**
+     * Copies the size x size square at (line, column) into block, row-major.
+     */
+    public void read(int line, int column, int size, double[] block) {
+        for (int i = 0; i < size; i++)
+            for (int j = 0; j < size; j++) block[i * size + j] = get(line + i, column + j);
+    }
+
+    /**
+     * Copies a row-major size x size square into the plane at (line, column).
+     */
+    public void write(int line, int column, int size, double[] block) {
+        for (int i = 0; i < size; i++)
+            for (int j = 0; j < size; j++) set(line + i, column + j, (float) block[i * size + j]);
+    }
+
+    /**
+     * Copies the width x height region at (line, column) into target from index on, row after row, each sample
+     * as the storage holds it in the byte order of target, and returns the index after the region.
+     */
+    public int read(int line, int column, int width, int height, ByteBuffer target, int index) {
+        for (int i = line; i < line + height; i++)
+            for (int j = column; j < column + width; j++, index += Float.BYTES) target.putFloat(index, get(i, j));
+        return index;
+    }
+
+    /**
+     * Copies a region that {@link #read(int, int, int, int, ByteBuffer, int)} stored at index of source into the
+     * plane at (line, column), and returns the index after it.
+     */
+    public int write(int line, int column, int width, int height, ByteBuffer source, int index) {
+        for (int i = line; i < line + height; i++)
+            for (int j = column; j < column + width; j++, index += Float.BYTES) set(i, j, source.getFloat(index));
+        return index;
+    }
+
+    /**
+     * Whether the width x height region at (line, column) holds the same samples in other, a plane of the
+     * same size and storage.
+     */
+    public boolean sameSamples(Plane other, int line, int column, int width, int height) {
+        for (int i = line; i < line + height; i++)
+            for (int j = column; j < column + width; j++)
+                if (Float.compare(get(i, j), other.get(i, j)) != 0)
+                    return false;
+        return true;
+    }
+
+    /**
+     * Copies the width samples of line into row.
+     */
+    public void readRow(int line, float[] row) {
+        for (int column = 0; column < width; column++) row[column] = get(line, column);
+    }
+
+    /**
+     * Copies the first width samples of row into line.
+     */
+    public void writeRow(int line, float[] row) {
+        for (int column = 0; column < width; column++) set(line, column, row[column]);
+    }
+
+    /**
+     * Copies the width samples of line into row, rounded to integers.
+     */
+    public void readRow(int line, int[] row) {
+        for (int column = 0; column < width; column++) row[column] = Math.round(get(line, column));
+    }
+
+    public void writeRow(int line, int[] row) {
+        for (int column = 0; column < width; column++) set(line, column, row[column]);
+    }
+
+    /**
+     * A copy of this plane with the same storage and the given size, cropped, or padded by repeating the
+     * last column and line.
+     */
+    public Plane resize(int width, int height) {
+        Plane copy = allocate(width, height, getStorage());
+        copyTo(copy);
+        return copy;
+    }
+
+    /**
+     * Fills target with this plane, cropped, or padded by repeating the last column and line.
+     */
+    public void copyTo(Plane target) {
+        float[] row = new float[Math.max(target.width, width)];
+        for (int line = 0; line < target.height; line++) {
+            readRow(Math.min(line, height - 1), row);
+            for (int column = width; column < target.width; column++) row[column] = row[width - 1];
+            target.writeRow(line, row);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    private static final class HeapPlane extends Plane {
+        private final float[] data;
+
+        HeapPlane(int width, int height) {
+            super(width, height, width);
+            data = new float[width * height];
+        }
+
+        @Override
+        public Storage getStorage() {
+            return Storage.HEAP;
+        }
+
+        @Override
+        public float get(int line, int column) {
+            return data[line * stride + column];
+        }
+
+        @Override
+        public void set(int line, int column, float value) {
+            data[line * stride + column] = value;
+        }
+
+        @Override
+        public void read(int line, int column, int size, double[] block) {
+            for (int i = 0, row = line * stride + column; i < size; i++, row += stride)
+                for (int j = 0; j < size; j++) block[i * size + j] = data[row + j];
+        }
+
+        @Override
+        public void write(int line, int column, int size, double[] block) {
+            for (int i = 0, row = line * stride + column; i < size; i++, row += stride)
+                for (int j = 0; j < size; j++) data[row + j] = (float) block[i * size + j];
+        }
+
+        @Override
+        public int read(int line, int column, int width, int height, ByteBuffer target, int index) {
+            FloatBuffer floats = target.asFloatBuffer();
+            for (int i = 0, row = line * stride + column; i < height; i++, row += stride)
+                floats.put(index / Float.BYTES + i * width, data, row, width);
+            return index + width * height * Float.BYTES;
+        }
+
+        @Override
+        public int write(int line, int column, int width, int height, ByteBuffer source, int index) {
+            FloatBuffer floats = source.asFloatBuffer();
+            for (int i = 0, row = line * stride + column; i < height; i++, row += stride)
+                floats.get(index / Float.BYTES + i * width, data, row, width);
+            return index + width * height * Float.BYTES;
+        }
+
+        @Override
+        public boolean sameSamples(Plane other, int line, int column, int width, int height) {
+            if (!(other instanceof HeapPlane))
+                return super.sameSamples(other, line, column, width, height);
+            float[] otherData = ((HeapPlane) other).data;
+            for (int i = 0, row = line * stride + column; i < height; i++, row += stride)
+                if (!Arrays.equals(data, row, row + width, otherData, row, row + width))
+                    return false;
+            return true;
+        }
+
+        @Override
+        public void readRow(int line, float[] row) {
+            System.arraycopy(data, line * stride, row, 0, width);
+        }
+
+        @Override
+        public void writeRow(int line, float[] row) {
+            System.arraycopy(row, 0, data, line * stride, width);
+        }
+    }
+
+    private static final class DirectPlane extends Plane {
+        private final FloatBuffer data;
+
+        DirectPlane(int width, int height) {
+            super(width, height, width);
+            data = ByteBuffer.allocateDirect(width * height * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+
+        @Override
+        public Storage getStorage() {
+            return Storage.DIRECT;
+        }
+
+        @Override
+        public float get(int line, int column) {
+            return data.get(line * stride + column);
+        }
+
+        @Override
+        public void set(int line, int column, float value) {
+            data.put(line * stride + column, value);
+        }
+
+        @Override
+        public void readRow(int line, float[] row) {
+            data.get(line * stride, row, 0, width);
+        }
+
+        @Override
+        public void writeRow(int line, float[] row) {
+            data.put(line * stride, row, 0, width);
+        }
+    }
+
+    private static final class BytePlane extends Plane {
+        private final byte[] data;
+
+        BytePlane(int width, int height) {
+            super(width, height, width);
+            data = new byte[width * height];
+        }
+
+        @Override
+        public Storage getStorage() {
+            return Storage.BYTE;
+        }
+
+        @Override
+        public float get(int line, int column) {
+            return data[line * stride + column] & 0xff;
+        }
+
+        @Override
+        public void set(int line, int column, float value) {
+            data[line * stride + column] = clamp((int) (value + 0.5f));
+        }
+
+        // callers round by adding a half and truncating, which only differs from rounding below zero;
+        // values are nearly always in range, so the branch predicts well and costs less than min and max
+        private static byte clamp(int value) {
+            return (byte) ((value & ~0xff) == 0 ? value : ~value >> 31);
+        }
+
+        @Override
+        public void read(int line, int column, int size, double[] block) {
+            for (int i = 0, row = line * stride + column; i < size; i++, row += stride)
+                for (int j = 0; j < size; j++) block[i * size + j] = data[row + j] & 0xff;
+        }
+
+        @Override
+        public void write(int line, int column, int size, double[] block) {
+            for (int i = 0, row = line * stride + column; i < size; i++, row += stride)
+                for (int j = 0; j < size; j++) data[row + j] = clamp((int) (block[i * size + j] + 0.5));
+        }
+
+        @Override
+        public int read(int line, int column, int width, int height, ByteBuffer target, int index) {
+            for (int i = 0, row = line * stride + column; i < height; i++, row += stride)
+                target.put(index + i * width, data, row, width);
+            return index + width * height;
+        }
+
+        @Override
+        public int write(int line, int column, int width, int height, ByteBuffer source, int index) {
+            for (int i = 0, row = line * stride + column; i < height; i++, row += stride)
+                source.get(index + i * width, data, row, width);
+            return index + width * height;
+        }
+
+        @Override
+        public boolean sameSamples(Plane other, int line, int column, int width, int height) {
+            if (!(other instanceof BytePlane))
+                return super.sameSamples(other, line, column, width, height);
+            byte[] otherData = ((BytePlane) other).data;
+            for (int i = 0, row = line * stride + column; i < height; i++, row += stride)
+                if (!Arrays.equals(data, row, row + width, otherData, row, row + width))
+                    return false;
+            return true;
+        }
+
+        @Override
+        public void readRow(int line, float[] row) {
+            for (int column = 0, offset = line * stride; column < width; column++) row[column] = data[offset + column] & 0xff;
+        }
+
+        @Override
+        public void writeRow(int line, float[] row) {
+            for (int column = 0, offset = line * stride; column < width; column++) data[offset + column] = clamp((int) (row[column] + 0.5f));
+        }
+
+        @Override
+        public void readRow(int line, int[] row) {
+            for (int column = 0, offset = line * stride; column < width; column++) row[column] = data[offset + column] & 0xff;
+        }
+
+        @Override
+        public void writeRow(int line, int[] row) {
+            for (int column = 0, offset = line * stride; column < width; column++) data[offset + column] = clamp(row[column]);
+        }
+    }
+
+    private static final class ShortPlane extends Plane {
+        private final short[] data;
+
+        ShortPlane(int width, int height) {
+            super(width, height, width);
+            data = new short[width * height];
+        }
+
+        @Override
+        public Storage getStorage() {
+            return Storage.SHORT;
+        }
+
+        @Override
+        public float get(int line, int column) {
+            return data[line * stride + column];
+        }
+
+        @Override
+        public void set(int line, int column, float value) {
+            data[line * stride + column] = clamp(Math.round(value));
+        }
+
+        private static short clamp(int value) {
+            return (short) Math.max(Short.MIN_VALUE, Math.min(value, Short.MAX_VALUE));
+        }
+
+        @Override
+        public void read(int line, int column, int size, double[] block) {
+            for (int i = 0, row = line * stride + column; i < size; i++, row += stride)
+                for (int j = 0; j < size; j++) block[i * size + j] = data[row + j];
+        }
+
+        @Override
+        public void write(int line, int column, int size, double[] block) {
+            for (int i = 0, row = line * stride + column; i < size; i++, row += stride)
+                for (int j = 0; j < size; j++) data[row + j] = clamp((int) Math.floor(block[i * size + j] + 0.5));
+        }
+
+        @Override
+        public int read(int line, int column, int width, int height, ByteBuffer target, int index) {
+            ShortBuffer shorts = target.asShortBuffer();
+            for (int i = 0, row = line * stride + column; i < height; i++, row += stride)
+                shorts.put(index / Short.BYTES + i * width, data, row, width);
+            return index + width * height * Short.BYTES;
+        }
+
+        @Override
+        public int write(int line, int column, int width, int height, ByteBuffer source, int index) {
+            ShortBuffer shorts = source.asShortBuffer();
+            for (int i = 0, row = line * stride + column; i < height; i++, row += stride)
+                shorts.get(index / Short.BYTES + i * width, data, row, width);
+            return index + width * height * Short.BYTES;
+        }
+
+        @Override
+        public void readRow(int line, float[] row) {
+            for (int column = 0, offset = line * stride; column < width; column++) row[column] = data[offset + column];
+        }
+
+        @Override
+        public void writeRow(int line, float[] row) {
+            for (int column = 0, offset = line * stride; column < width; column++) data[offset + column] = clamp(Math.round(row[column]));
+        }
+
+        @Override
+        public void readRow(int line, int[] row) {
+            for (int column = 0, offset = line * stride; column < width; column++) row[column] = data[offset + column];
+        }
+
+        @Override
+        public void writeRow(int line, int[] row) {
+            for (int column = 0, offset = line * stride; column < width; column++) data[offset + column] = clamp(row[column]);
+        }
+    }
+}
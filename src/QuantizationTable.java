@@ -0,0 +1,91 @@
+import java.util.Arrays;
+
+/**
+ * An 8x8 quantization table: the divisor of every coefficient, row-major, with its reciprocal precomputed so
+ * quantizing is a multiplication.
+ * <p>
+ * {@link #luminance} and {@link #chrominance} scale the example tables of the JPEG standard (Annex K) by a
+ * 1-100 quality the way the IJG encoder does: 50 is the table as printed, lower qualities multiply it up to
+ * 50x and higher ones shrink it down to all ones at 100. Divisors are kept within 1..255.
+ */
+public final class QuantizationTable {
+    private static final int[] LUMINANCE = {
+            16, 11, 10, 16, 24, 40, 51, 61,
+            12, 12, 14, 19, 26, 58, 60, 55,
+            14, 13, 16, 24, 40, 57, 69, 56,
+            14, 17, 22, 29, 51, 87, 80, 62,
+            18, 22, 37, 56, 68, 109, 103, 77,
+            24, 35, 55, 64, 81, 104, 113, 92,
+            49, 64, 78, 87, 103, 121, 120, 101,
+            72, 92, 95, 98, 112, 100, 103, 99
+    };
+    private static final int[] CHROMINANCE = {
+            17, 18, 24, 47, 99, 99, 99, 99,
+            18, 21, 26, 66, 99, 99, 99, 99,
+            24, 26, 56, 99, 99, 99, 99, 99,
+            47, 66, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99
+    };
+
+    private final int[] divisors;
+    private final double[] reciprocals = new double[64];
+
+    /**
+     * @param divisors 64 row-major divisors, each 1..65535
+     */
+    public QuantizationTable(int[] divisors) {
+        if (divisors.length != 64)
+            throw new IllegalArgumentException("A quantization table has 64 entries, not " + divisors.length);
+        this.divisors = divisors.clone();
+        for (int i = 0; i < 64; i++) {
+            if (divisors[i] < 1 || divisors[i] > 0xffff)
+                throw new IllegalArgumentException("Quantization divisor out of range: " + divisors[i]);
+            reciprocals[i] = 1.0 / divisors[i];
+        }
+    }
+
+    public static QuantizationTable luminance(int quality) {
+        return scaled(LUMINANCE, quality);
+    }
+
+    public static QuantizationTable chrominance(int quality) {
+        return scaled(CHROMINANCE, quality);
+    }
+
+    private static QuantizationTable scaled(int[] base, int quality) {
+        if (quality < 1 || quality > 100)
+            throw new IllegalArgumentException("Quality must be 1..100: " + quality);
+        int percent = quality < 50 ? 5000 / quality : 200 - 2 * quality;
+        int[] divisors = new int[64];
+        for (int i = 0; i < 64; i++)
+            divisors[i] = Math.min(255, Math.max(1, (base[i] * percent + 50) / 100));
+        return new QuantizationTable(divisors);
+    }
+
+    /**
+     * The divisor of coefficient (u, v) at row-major index u * 8 + v.
+     */
+    public int getDivisor(int index) {
+        return divisors[index];
+    }
+
+    public double getReciprocal(int index) {
+        return reciprocals[index];
+    }
+
+    /**
+     * Tables are equal when their divisors are.
+     */
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof QuantizationTable && Arrays.equals(divisors, ((QuantizationTable) other).divisors);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(divisors);
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Direct evaluation of the DCT definition. Slow, kept as the reference the fast engines are checked against.
+ */
+public class ReferenceDCT implements DCTEngine {
+    private final double sqrtConstant = 1 / Math.sqrt(2.0);
+    private final double constant = 1 / 4.0;
+    private final double PI = Math.PI;
+
+    @Override
+    public void forwardDCT(double[] block) {
+        double[] matrix = copy(block);
+        for (int u = 0; u < 8; u++)
+            for (int v = 0; v < 8; v++) block[u * 8 + v] = constant * alpha(u) * alpha(v) * firstSumFDCT(matrix, u, v);
+    }
+
+    private double firstSumFDCT(double[] matrix, int u, int v) {
+        double sum = 0.0;
+        for (int x = 0; x < 8; x++) sum += secondSumFDCT(matrix, u, v, x);
+        return sum;
+    }
+
+    private double secondSumFDCT(double[] matrix, int u, int v, int x) {
+        double sum = 0.0;
+        for (int y = 0; y < 8; y++) sum += cosineProductFDCT(matrix[x * 8 + y], x, y, u, v);
+        return sum;
+    }
+
+    private double cosineProductFDCT(double value, int x, int y, int u, int v) {
+        double cosX = Math.cos(((2 * x + 1) * u * PI) / 16);
+        double cosY = Math.cos(((2 * y + 1) * v * PI) / 16);
+        return value * cosX * cosY;
+    }
+
+    @Override
+    public void inverseDCT(double[] block) {
+        double[] matrix = copy(block);
+        for (int x = 0; x < 8; x++)
+            for (int y = 0; y < 8; y++) block[x * 8 + y] = (int) (constant * firstSumIDCT(matrix, x, y));
+    }
+
+    private double firstSumIDCT(double[] matrix, int x, int y) {
+        double sum = 0.0;
+        for (int u = 0; u < 8; u++) sum += secondSumIDCT(matrix, x, y, u);
+        return sum;
+    }
+
+    private double secondSumIDCT(double[] matrix, int x, int y, int u) {
+        double sum = 0.0;
+        for (int v = 0; v < 8; v++) sum += cosineProductIDCT(matrix[u * 8 + v], x, y, u, v);
+        return sum;
+    }
+
+    private double cosineProductIDCT(double value, int x, int y, int u, int v) {
+        double cosX = Math.cos(((2 * x + 1) * u * PI) / 16);
+        double cosY = Math.cos(((2 * y + 1) * v * PI) / 16);
+        return alpha(u) * alpha(v) * value * cosX * cosY;
+    }
+
+    private static double[] copy(double[] block) {
+        double[] matrix = BlockScratch.get().rows;
+        System.arraycopy(block, 0, matrix, 0, 64);
+        return matrix;
+    }
+
+    private double alpha(int value) {
+        return value > 0 ? 1 : sqrtConstant;
+    }
+}
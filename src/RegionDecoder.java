@@ -0,0 +1,208 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Decodes a rectangle of a .yuvj image, at full size or scaled down by 2, 4 or 8, without reconstructing
+ * the rest of it.
+ * <p>
+ * The restart index locates the intervals holding the requested blocks; the others are never touched.
+ * Inside those intervals every block still has to be entropy decoded to find the next one, but only the
+ * MCUs overlapping the rectangle are dequantized and transformed. Scaled decodes use the reduced
+ * inverse DCTs of {@link ScaledIDCT}, down to the DC term alone at 1/8, where the AC coefficients are
+ * parsed but not even stored. Subsampled chroma is reduced less than luma, so it comes out at the luma
+ * resolution where the reduced transforms allow instead of being upsampled from an even coarser grid.
+ * <p>
+ * With a {@link TileCache} in the settings, the Y, U and V samples of every decoded MCU are cached at the
+ * scale they were decoded at, and later regions copy the MCUs found there instead of decoding them again:
+ * only intervals holding an MCU that is not cached are entropy decoded.
+ */
+public class RegionDecoder {
+    private final YuvjReader file;
+    private final PayloadDecoder decoder;
+    private final BlockTransform[] transforms = new BlockTransform[3];
+    private final ForkJoinPool pool;
+    private final ChromaMode chromaMode;
+    private final int mcusPerRow;
+    private final Plane.Storage storage;
+    private final Class<? extends DCTEngine> engine;
+    private final TileCache cache;
+    private final String imageId;
+
+    public RegionDecoder(YuvjReader file) {
+        this(file, new CodecSettings());
+    }
+
+    public RegionDecoder(YuvjReader file, CodecSettings settings) {
+        this(file, settings, file.getFileName());
+    }
+
+    /**
+     * @param imageId the name of the image in the tile cache: decoders with the same id, sample storage and DCT
+     *                engine share their tiles, so they must read the same image
+     */
+    public RegionDecoder(YuvjReader file, CodecSettings settings, String imageId) {
+        if (imageId == null)
+            throw new IllegalArgumentException("Image id must not be null");
+        if (file.isDelta())
+            throw new IllegalArgumentException("Delta frames can only be decoded in sequence: " + file.getFileName());
+        this.file = file;
+        this.pool = settings.getPool();
+        this.storage = settings.getSampleStorage();
+        this.engine = settings.getDctEngine().getClass();
+        this.cache = settings.getTileCache();
+        this.imageId = imageId;
+        this.chromaMode = file.getChromaMode();
+        this.mcusPerRow = chromaMode.getMcusPerRow(file.getWidth());
+        this.decoder = new PayloadDecoder(file.getPayload(), file.getRestarts(), file.getRestartInterval(),
+                file.createEntropyCoder(), chromaMode, mcusPerRow, chromaMode.getMcuRows(file.getHeight()));
+        for (int i = 0; i < 3; i++)
+            transforms[i] = new BlockTransform(settings.getDctEngine(), file.getQuantization(i));
+    }
+
+    /**
+     * Decodes the pixels [x, x + width) x [y, y + height) at 1/scale of their size into R, G and B planes
+     * of ceil(width / scale) x ceil(height / scale) samples.
+     */
+    public Plane[] decode(int x, int y, int width, int height, int scale) {
+        if (scale != 1 && scale != 2 && scale != 4 && scale != 8)
+            throw new IllegalArgumentException("Scale must be 1, 2, 4 or 8: " + scale);
+        if (x < 0 || y < 0 || width <= 0 || height <= 0 || x + width > file.getWidth() || y + height > file.getHeight())
+            throw new IllegalArgumentException(String.format("Region %sx%s at (%s, %s) is outside the %sx%s image",
+                    width, height, x, y, file.getWidth(), file.getHeight()));
+
+        int mcuWidth = chromaMode.getMcuWidth();
+        int mcuHeight = chromaMode.getMcuHeight();
+        int firstColumn = x / mcuWidth;
+        int lastColumn = (x + width - 1) / mcuWidth;
+        int firstRow = y / mcuHeight;
+        int lastRow = (y + height - 1) / mcuHeight;
+        int chromaScale = Math.max(1, scale / Math.min(chromaMode.getHorizontal(), chromaMode.getVertical()));
+        int[] scales = {scale, chromaScale, chromaScale};
+        boolean[] dcOnly = {scale == 8, chromaScale == 8, chromaScale == 8};
+
+        // the region rounded out to whole MCUs, and the samples an MCU spans in the plane of each component
+        int[] spanWidth = {mcuWidth, 8, 8};
+        int[] spanHeight = {mcuHeight, 8, 8};
+        Plane[] yuv = new Plane[3];
+        for (int i = 0; i < 3; i++)
+            yuv[i] = Plane.allocate((lastColumn - firstColumn + 1) * spanWidth[i] / scales[i],
+                    (lastRow - firstRow + 1) * spanHeight[i] / scales[i], storage);
+
+        // the samples of an MCU in each plane, which a tile holds one plane after the other
+        int[] tileWidth = new int[3];
+        int[] tileHeight = new int[3];
+        for (int i = 0; i < 3; i++) {
+            tileWidth[i] = spanWidth[i] / scales[i];
+            tileHeight[i] = spanHeight[i] / scales[i];
+        }
+        int tileBytes = (tileWidth[0] * tileHeight[0] + 2 * tileWidth[1] * tileHeight[1]) * storage.getSampleSize();
+        int regionColumns = lastColumn - firstColumn + 1;
+        boolean[] cached = new boolean[(lastRow - firstRow + 1) * regionColumns];
+        if (cache != null)
+            pool.invoke(new BlockRowTask(firstRow, lastRow + 1, 1, row -> {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    ByteBuffer tile = cache.get(imageId, storage, engine, scale, row * mcusPerRow + column);
+                    if (tile == null)
+                        continue;
+                    loadTile(tile, yuv, row - firstRow, column - firstColumn, tileWidth, tileHeight);
+                    cached[(row - firstRow) * regionColumns + column - firstColumn] = true;
+                }
+            }));
+
+        BitSet needed = new BitSet(decoder.getIntervalCount());
+        int lastMcu = -1;
+        for (int row = firstRow; row <= lastRow; row++)
+            for (int column = firstColumn; column <= lastColumn; column++)
+                if (!cached[(row - firstRow) * regionColumns + column - firstColumn]) {
+                    lastMcu = row * mcusPerRow + column;
+                    needed.set(decoder.getIntervalOf(lastMcu));
+                }
+        int[] intervals = needed.stream().toArray();
+        int lastNeeded = lastMcu;
+        int intervalMcus = decoder.getRestartInterval();
+
+        pool.invoke(new BlockRowTask(0, intervals.length, 1, i -> {
+            decoder.decodeInterval(intervals[i], lastNeeded, dcOnly, (component, line, column, block, end) -> {
+                int row = line / spanHeight[component];
+                int mcuColumn = column / spanWidth[component];
+                if (row < firstRow || mcuColumn < firstColumn || mcuColumn > lastColumn
+                        || cached[(row - firstRow) * regionColumns + mcuColumn - firstColumn])
+                    return;
+                int componentScale = scales[component];
+                transforms[component].inverseBlock(block, componentScale, end);
+                yuv[component].write((line - firstRow * spanHeight[component]) / componentScale,
+                        (column - firstColumn * spanWidth[component]) / componentScale, 8 / componentScale, block);
+            });
+            if (cache == null)
+                return;
+            int last = Math.min(lastNeeded, (intervals[i] + 1) * intervalMcus - 1);
+            for (int mcu = intervals[i] * intervalMcus; mcu <= last; mcu++) {
+                int row = mcu / mcusPerRow;
+                int column = mcu % mcusPerRow;
+                if (row < firstRow || column < firstColumn || column > lastColumn
+                        || cached[(row - firstRow) * regionColumns + column - firstColumn])
+                    continue;
+                ByteBuffer tile = cache.allocate(tileBytes);
+                storeTile(yuv, row - firstRow, column - firstColumn, tileWidth, tileHeight, tile);
+                cache.put(imageId, storage, engine, scale, mcu, tile);
+            }
+        }));
+
+        for (int i = 1; i < 3; i++) {
+            if (yuv[i].getWidth() == yuv[0].getWidth() && yuv[i].getHeight() == yuv[0].getHeight())
+                continue;
+            Plane full = Plane.allocate(yuv[0].getWidth(), yuv[0].getHeight(), storage);
+            chromaMode.upsample(yuv[i], full, full.getHeight());
+            yuv[i] = full;
+        }
+        Plane[] rgb = new Plane[3];
+        for (int i = 0; i < 3; i++)
+            rgb[i] = Plane.allocate(yuv[0].getWidth(), yuv[0].getHeight(), storage);
+        ColorConverter.yuvToRgb(pool, yuv[0], yuv[1], yuv[2], rgb[0], rgb[1], rgb[2], yuv[0].getHeight());
+
+        int offsetColumn = (x - firstColumn * mcuWidth) / scale;
+        int offsetLine = (y - firstRow * mcuHeight) / scale;
+        int outputWidth = (width + scale - 1) / scale;
+        int outputHeight = (height + scale - 1) / scale;
+        if (offsetColumn == 0 && offsetLine == 0 && outputWidth == rgb[0].getWidth() && outputHeight == rgb[0].getHeight())
+            return rgb;
+        Plane[] cropped = new Plane[3];
+        for (int i = 0; i < 3; i++) {
+            cropped[i] = Plane.allocate(outputWidth, outputHeight, storage);
+            for (int line = 0; line < outputHeight; line++)
+                for (int column = 0; column < outputWidth; column++)
+                    cropped[i].set(line, column, rgb[i].get(offsetLine + line, offsetColumn + column));
+        }
+        return cropped;
+    }
+
+    /**
+     * Copies the MCU at (row, column) of the region out of the Y, U and V planes into tile.
+     */
+    private static void storeTile(Plane[] yuv, int row, int column, int[] tileWidth, int[] tileHeight, ByteBuffer tile) {
+        for (int i = 0, index = 0; i < 3; i++)
+            index = yuv[i].read(row * tileHeight[i], column * tileWidth[i], tileWidth[i], tileHeight[i], tile, index);
+    }
+
+    /**
+     * Copies tile into the MCU at (row, column) of the region in the Y, U and V planes.
+     */
+    private static void loadTile(ByteBuffer tile, Plane[] yuv, int row, int column, int[] tileWidth, int[] tileHeight) {
+        for (int i = 0, index = 0; i < 3; i++)
+            index = yuv[i].write(row * tileHeight[i], column * tileWidth[i], tileWidth[i], tileHeight[i], tile, index);
+    }
+
+    public void decode(int x, int y, int width, int height, int scale, String outputFileName, PPMWriter.Format format) throws IOException {
+        Plane[] rgb = decode(x, y, width, height, scale);
+        PPMWriter.write(outputFileName, rgb[0], rgb[1], rgb[2], format, null);
+    }
+
+    /**
+     * The whole image at 1/scale of its size.
+     */
+    public Plane[] thumbnail(int scale) {
+        return decode(0, 0, file.getWidth(), file.getHeight(), scale);
+    }
+}
@@ -0,0 +1,38 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Takes decoded images as rows of packed 8 bit R, G, B bytes, top to bottom, as
+ * {@link StreamingCodec#decode(EncodedImage, RowSink)} produces them.
+ */
+public interface RowSink {
+    /**
+     * Takes the next row, the length bytes of rgb from offset. The array is reused for the rows after, so it
+     * must not be kept once writeRow returns.
+     */
+    void writeRow(byte[] rgb, int offset, int length) throws IOException;
+
+    static RowSink of(OutputStream out) {
+        return out::write;
+    }
+
+    /**
+     * A sink writing every row to channel as it comes; a buffered stream suits narrow images better.
+     */
+    static RowSink of(WritableByteChannel channel) {
+        return (rgb, offset, length) -> {
+            ByteBuffer row = ByteBuffer.wrap(rgb, offset, length);
+            while (row.hasRemaining())
+                channel.write(row);
+        };
+    }
+
+    /**
+     * A sink filling buffer from its position, which needs room for width * height * 3 bytes.
+     */
+    static RowSink of(ByteBuffer buffer) {
+        return buffer::put;
+    }
+}
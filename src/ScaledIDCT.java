@@ -0,0 +1,46 @@
+/**
+ * Reduced inverse DCTs for 1/2, 1/4 and 1/8 scaled decoding.
+ * <p>
+ * Evaluating the 8x8 inverse DCT at the centres of n x n equal cells turns its cosines into those of an
+ * n-point DCT, and dropping the coefficients above n only removes detail the smaller image cannot show.
+ * So an n x n output takes the n x n lowest-frequency coefficients and an n-point inverse DCT: n = 1 is
+ * the DC term alone, the block average.
+ */
+final class ScaledIDCT {
+    // COSINE[n][u * n + i] = alpha(u) / 2 * cos((2i + 1) * u * PI / 2n)
+    private static final double[][] COSINE = new double[5][];
+
+    static {
+        for (int n = 1; n <= 4; n <<= 1) {
+            COSINE[n] = new double[n * n];
+            for (int u = 0; u < n; u++)
+                for (int i = 0; i < n; i++)
+                    COSINE[n][u * n + i] = (u == 0 ? 1 / Math.sqrt(2.0) : 1) / 2 * Math.cos(((2 * i + 1) * u * Math.PI) / (2 * n));
+        }
+    }
+
+    private ScaledIDCT() {
+    }
+
+    /**
+     * Reconstructs the n x n samples of a row-major 8x8 coefficient block into its first n * n entries,
+     * row-major with stride n, truncating each sample toward zero like {@link DCTEngine#inverseDCT}.
+     */
+    static void inverse(double[] block, int n) {
+        double[] cosine = COSINE[n];
+        double[] rows = BlockScratch.get().rows;
+        // rows[u * n + j] = sum over v of F(u, v) * C(v, j)
+        for (int u = 0; u < n; u++)
+            for (int j = 0; j < n; j++) {
+                double sum = 0.0;
+                for (int v = 0; v < n; v++) sum += block[u * 8 + v] * cosine[v * n + j];
+                rows[u * n + j] = sum;
+            }
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j < n; j++) {
+                double sum = 0.0;
+                for (int u = 0; u < n; u++) sum += cosine[u * n + i] * rows[u * n + j];
+                block[i * n + j] = (int) sum;
+            }
+    }
+}
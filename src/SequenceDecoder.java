@@ -0,0 +1,53 @@
+import java.util.Arrays;
+
+/**
+ * Decodes the frames of a {@link SequenceEncoder} in order. The decoder keeps the coefficients and samples of
+ * the last frame, which the delta frame after it leaves in place where its blocks did not change, so those
+ * blocks are neither entropy decoded nor transformed again.
+ * <p>
+ * Decoding starts with a key frame; a delta frame that does not follow a frame of the same size, chroma mode
+ * and tables is rejected.
+ */
+public class SequenceDecoder {
+    private final Decoder decoder;
+    private final Decoder.Scratch scratch = new Decoder.Scratch();
+    // the frame before, quantization being null before the first one and after a frame that failed
+    private int width;
+    private int height;
+    private ChromaMode chromaMode;
+    private QuantizationTable[] quantization;
+
+    public SequenceDecoder() {
+        this(new CodecSettings());
+    }
+
+    public SequenceDecoder(CodecSettings settings) {
+        this.decoder = new Decoder(settings);
+    }
+
+    public synchronized Image decode(EncodedImage frame) {
+        QuantizationTable[] tables = {frame.getQuantization(0), frame.getQuantization(1), frame.getQuantization(2)};
+        start(frame.isDelta(), frame.getWidth(), frame.getHeight(), frame.getChromaMode(), tables);
+        Image image = decoder.decode(frame, scratch);
+        quantization = tables;
+        return image;
+    }
+
+    public synchronized Image decode(YuvjReader file) {
+        QuantizationTable[] tables = {file.getQuantization(0), file.getQuantization(1), file.getQuantization(2)};
+        start(file.isDelta(), file.getWidth(), file.getHeight(), file.getChromaMode(), tables);
+        Image image = decoder.decode(file, scratch);
+        quantization = tables;
+        return image;
+    }
+
+    private void start(boolean delta, int width, int height, ChromaMode chromaMode, QuantizationTable[] tables) {
+        if (delta && (quantization == null || width != this.width || height != this.height
+                || chromaMode != this.chromaMode || !Arrays.equals(tables, quantization)))
+            throw new IllegalArgumentException("Delta frame does not follow a frame of the same size and tables");
+        this.width = width;
+        this.height = height;
+        this.chromaMode = chromaMode;
+        quantization = null;
+    }
+}
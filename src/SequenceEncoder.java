@@ -0,0 +1,53 @@
+/**
+ * Encodes the frames of a video from a fixed camera one after the other. Every key frame is coded like
+ * {@link Encoder#encode(Image)} does; the frames up to the next one are delta frames, which leave out the
+ * blocks that come out the same as in the frame before: those whose samples did not change are not even
+ * transformed, and a left out block costs one bit. Decoding a delta frame gives exactly what decoding the
+ * whole frame would, but only with a {@link SequenceDecoder} that decoded the frames before it.
+ * <p>
+ * A frame of another size than the one before starts with a key frame. An instance keeps the last
+ * frame between calls, so it encodes one sequence, one frame at a time.
+ */
+public class SequenceEncoder {
+    private final Encoder encoder;
+    private final int keyFrameInterval;
+    private final Encoder.Scratch scratch = new Encoder.Scratch();
+    // the frame before, null before the first one, after a reset and after a frame that failed
+    private Image last;
+    private int sinceKeyFrame;
+
+    public SequenceEncoder() {
+        this(new CodecSettings());
+    }
+
+    public SequenceEncoder(CodecSettings settings) {
+        this.encoder = new Encoder(settings);
+        this.keyFrameInterval = settings.getKeyFrameInterval();
+    }
+
+    public synchronized EncodedImage encode(Image frame) {
+        boolean delta = last != null && frame.getWidth() == last.getWidth() && frame.getHeight() == last.getHeight()
+                && (keyFrameInterval == 0 || sinceKeyFrame < keyFrameInterval);
+        // the samples of the frame before become the previous ones, and their planes take the new samples
+        Plane[] samples = scratch.samples;
+        Plane[] previous = scratch.previous;
+        for (int i = 0; i < 3; i++) {
+            Plane plane = previous[i];
+            previous[i] = samples[i];
+            samples[i] = plane;
+        }
+        last = null;
+        EncodedImage encoded = encoder.encode(frame, scratch, delta);
+        last = frame;
+        sinceKeyFrame = delta ? sinceKeyFrame + 1 : 1;
+        Log.info("Coded a %s frame", delta ? "delta" : "key");
+        return encoded;
+    }
+
+    /**
+     * Makes the next frame a key frame.
+     */
+    public synchronized void reset() {
+        last = null;
+    }
+}
@@ -0,0 +1,29 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one {@link Metrics.Span}, emitted when {@link Metrics#setJfrEvents} is on.
+ */
+@Name("codec.Stage")
+@Label("Codec Stage")
+@Category("Codec")
+@Description("One run of a codec stage")
+public class StageEvent extends jdk.jfr.Event {
+    @Label("Stage")
+    String stage;
+
+    @Label("Units")
+    @Description("Pixels, samples or blocks processed, depending on the stage")
+    long units;
+
+    @Label("Bytes In")
+    @DataAmount
+    long bytesIn;
+
+    @Label("Bytes Out")
+    @DataAmount
+    long bytesOut;
+}
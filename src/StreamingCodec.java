@@ -0,0 +1,265 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+
+/**
+ * Encodes and decodes one row of MCUs at a time, so memory is bounded by the image width and not its area.
+ * A strip of 8 or 16 lines, the MCU height of the chroma mode, is read from the PPM, converted to YUV, its
+ * chroma decimated, transformed and entropy coded, and its bytes are written out before the next strip is
+ * read; decoding runs the same steps backwards, each strip going straight to packed RGB rows for a
+ * {@link RowSink} such as a {@link PPMWriter}.
+ * <p>
+ * The right and bottom edges are padded to whole MCUs by repeating the last column and row.
+ * The output is a .yuvj file; the standard Huffman tables are used, since optimal ones need the histogram
+ * of the whole image. {@link #decode} reads any .yuvj file, whatever tables and chroma mode it was written with.
+ * <p>
+ * {@link #encode(Plane, Plane, Plane)} runs the same strips over an image already in memory and keeps the
+ * result as an {@link EncodedImage}. Every call works on its own buffers, so one instance can encode on
+ * several threads at once.
+ */
+public class StreamingCodec {
+    private static final int[] COMPONENT_TABLES = {0, 1, 1};
+    private static final HuffmanTable[] HUFFMAN_TABLES = {HuffmanTable.LUMINANCE_DC, HuffmanTable.LUMINANCE_AC,
+            HuffmanTable.CHROMINANCE_DC, HuffmanTable.CHROMINANCE_AC};
+
+    private final DCTEngine dctEngine;
+    private final QuantizationTable[] quantization;
+    private final BlockTransform[] transforms;
+    private final int restartInterval;
+    private final ChromaMode chromaMode;
+    private final Plane.Storage sampleStorage;
+    private final Plane.Storage coefficientStorage;
+
+    public StreamingCodec() {
+        this(new CodecSettings());
+    }
+
+    public StreamingCodec(CodecSettings settings) {
+        this.dctEngine = settings.getDctEngine();
+        this.quantization = settings.getQuantizationTables();
+        BlockTransform chroma = new BlockTransform(dctEngine, quantization[1]);
+        this.transforms = new BlockTransform[]{new BlockTransform(dctEngine, quantization[0]), chroma, chroma};
+        this.restartInterval = settings.getRestartInterval();
+        this.chromaMode = settings.getChromaMode();
+        this.sampleStorage = settings.getSampleStorage();
+        this.coefficientStorage = settings.getCoefficientStorage();
+    }
+
+    public void encode(String inputFileName, String outputFileName) throws IOException {
+        PPMReader reader = new PPMReader(inputFileName);
+        try (YuvjWriter out = new YuvjWriter(outputFileName, reader.getWidth(), reader.getHeight(), chromaMode,
+                restartInterval, quantization, COMPONENT_TABLES, HUFFMAN_TABLES)) {
+            encode(reader::readRows, reader.getWidth(), reader.getHeight(), out, out::addRestart);
+        }
+    }
+
+    /**
+     * Encodes an image already held in planes, keeping the result in memory.
+     */
+    public EncodedImage encode(Plane r, Plane g, Plane b) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        LongStream.Builder restarts = LongStream.builder();
+        Plane[] source = {r, g, b};
+        float[] row = new float[chromaMode.getMcusPerRow(r.getWidth()) * chromaMode.getMcuWidth()];
+        encode((fromLine, lines, stripR, stripG, stripB) -> {
+            Plane[] strip = {stripR, stripG, stripB};
+            for (int i = 0; i < 3; i++)
+                for (int line = 0; line < lines; line++) {
+                    source[i].readRow(fromLine + line, row);
+                    strip[i].writeRow(line, row);
+                }
+        }, r.getWidth(), r.getHeight(), payload, restarts);
+        return new EncodedImage(r.getWidth(), r.getHeight(), chromaMode, restartInterval, quantization,
+                COMPONENT_TABLES, HUFFMAN_TABLES, payload.toByteArray(), restarts.build().mapToInt(offset -> (int) offset).toArray());
+    }
+
+    private interface RowSource {
+        void readRows(int fromLine, int lines, Plane r, Plane g, Plane b) throws IOException;
+    }
+
+    // streams the payload to out a strip at a time, passing the payload offset of every restart interval to restarts
+    private void encode(RowSource source, int width, int height, OutputStream out, LongConsumer restarts) throws IOException {
+        int horizontal = chromaMode.getHorizontal();
+        int vertical = chromaMode.getVertical();
+        int strip = chromaMode.getMcuHeight();
+        int mcusPerRow = chromaMode.getMcusPerRow(width);
+        int paddedWidth = mcusPerRow * chromaMode.getMcuWidth();
+
+        Plane[] rgb = allocateStrip(paddedWidth, strip, sampleStorage);
+        Plane[] yuv = allocateStrip(paddedWidth, strip, sampleStorage);
+        Plane[] samples = chromaStrip(yuv, mcusPerRow * 8);
+        Plane[] coefficients = allocateCoefficients(samples);
+        double[] block = new double[64];
+        EntropyCoder coder = EntropyCoder.standard();
+        BitWriter writer = new BitWriter(paddedWidth * strip);
+
+        long written = 0;
+        int mcu = 0;
+        for (int line = 0; line < height; line += strip) {
+            int lines = Math.min(strip, height - line);
+            source.readRows(line, lines, rgb[0], rgb[1], rgb[2]);
+            for (Plane plane : rgb)
+                pad(plane, width, lines);
+
+            ColorConverter.rgbToYuv(rgb[0], rgb[1], rgb[2], yuv[0], yuv[1], yuv[2], strip);
+            for (int i = 0; i < 3; i++) {
+                if (samples[i] != yuv[i])
+                    chromaMode.downsample(yuv[i], samples[i], 8);
+                for (int row = 0; row < samples[i].getHeight(); row += 8)
+                    transforms[i].forwardRow(samples[i], coefficients[i], row);
+            }
+
+            try (Metrics.Span span = Metrics.start(Metrics.Stage.ENTROPY_ENCODE)
+                    .units((long) mcusPerRow * chromaMode.getBlocksPerMcu())) {
+                for (int column = 0; column < mcusPerRow * 8; column += 8, mcu++) {
+                    if (restartInterval > 0 && mcu % restartInterval == 0) {
+                        writer.flush();
+                        restarts.accept(written + writer.size());
+                        coder.reset();
+                    }
+                    for (int i = 0; i < vertical; i++)
+                        for (int j = 0; j < horizontal; j++) {
+                            coefficients[0].read(i * 8, column * horizontal + j * 8, 8, block);
+                            coder.encodeBlock(block, 0, writer);
+                        }
+                    for (int i = 1; i < 3; i++) {
+                        coefficients[i].read(0, column, 8, block);
+                        coder.encodeBlock(block, i, writer);
+                    }
+                }
+                span.bytesOut(writer.size());
+            }
+            written += writer.size();
+            writer.drainTo(out);
+        }
+        writer.flush();
+        writer.drainTo(out);
+    }
+
+    public void decode(String inputFileName, String outputFileName, PPMWriter.Format format) throws IOException {
+        YuvjReader file = new YuvjReader(inputFileName);
+        try (PPMWriter writer = new PPMWriter(outputFileName, file.getWidth(), file.getHeight(), format, null)) {
+            decode(file, writer);
+        }
+    }
+
+    /**
+     * Decodes file one row of MCUs at a time, from the entropy coded blocks through the inverse transform,
+     * chroma upsampling and color conversion straight to packed RGB rows for sink. Nothing the size of the
+     * image is allocated.
+     */
+    public void decode(YuvjReader file, RowSink sink) throws IOException {
+        if (file.isDelta())
+            throw new IllegalArgumentException("Delta frames can only be decoded in sequence: " + file.getFileName());
+        decode(file.getWidth(), file.getHeight(), file.getChromaMode(),
+                new QuantizationTable[]{file.getQuantization(0), file.getQuantization(1), file.getQuantization(2)},
+                file.createEntropyCoder(), file.getPayload(), file.getRestartInterval(), file.getRestarts(), sink);
+    }
+
+    /**
+     * Like {@link #decode(YuvjReader, RowSink)}, for an image coded in memory.
+     */
+    public void decode(EncodedImage image, RowSink sink) throws IOException {
+        if (image.isDelta())
+            throw new IllegalArgumentException("Delta frames can only be decoded in sequence");
+        decode(image.getWidth(), image.getHeight(), image.getChromaMode(),
+                new QuantizationTable[]{image.getQuantization(0), image.getQuantization(1), image.getQuantization(2)},
+                image.createEntropyCoder(), image.getPayload(), image.getRestartInterval(), image.getRestarts(), sink);
+    }
+
+    private void decode(int width, int height, ChromaMode mode, QuantizationTable[] quantization, EntropyCoder coder,
+                        ByteBuffer payload, int interval, int[] restarts, RowSink sink) throws IOException {
+        BlockTransform[] transforms = new BlockTransform[3];
+        for (int i = 0; i < 3; i++)
+            transforms[i] = new BlockTransform(dctEngine, quantization[i]);
+        int horizontal = mode.getHorizontal();
+        int vertical = mode.getVertical();
+        int strip = mode.getMcuHeight();
+        int mcusPerRow = mode.getMcusPerRow(width);
+
+        // Y of the strip and its one block row of U and V
+        Plane[] samples = {Plane.allocate(mcusPerRow * mode.getMcuWidth(), strip, sampleStorage),
+                Plane.allocate(mcusPerRow * 8, 8, sampleStorage), Plane.allocate(mcusPerRow * 8, 8, sampleStorage)};
+        Plane[] coefficients = allocateCoefficients(samples);
+        byte[][] ends = new byte[3][];
+        for (int i = 0; i < 3; i++)
+            ends[i] = new byte[coefficients[i].getWidth() / 8 * (coefficients[i].getHeight() / 8)];
+        int rowLength = width * 3;
+        byte[] rgb = new byte[rowLength * strip];
+        double[] block = new double[64];
+        BitReader reader = new BitReader(payload);
+        int mcu = 0;
+
+        for (int line = 0; line < height; line += strip) {
+            try (Metrics.Span span = Metrics.start(Metrics.Stage.ENTROPY_DECODE)) {
+                span.units((long) mcusPerRow * mode.getBlocksPerMcu());
+                for (int column = 0; column < mcusPerRow * 8; column += 8, mcu++) {
+                    if (interval > 0 && mcu % interval == 0) {
+                        reader.seek(restarts[mcu / interval]);
+                        coder.reset();
+                    }
+                    for (int i = 0; i < vertical; i++)
+                        for (int j = 0; j < horizontal; j++) {
+                            ends[0][i * mcusPerRow * horizontal + column / 8 * horizontal + j] = (byte) coder.decodeBlock(reader, 0, block);
+                            coefficients[0].write(i * 8, column * horizontal + j * 8, 8, block);
+                        }
+                    for (int i = 1; i < 3; i++) {
+                        ends[i][column / 8] = (byte) coder.decodeBlock(reader, i, block);
+                        coefficients[i].write(0, column, 8, block);
+                    }
+                }
+            }
+            for (int i = 0; i < 3; i++)
+                for (int row = 0; row < samples[i].getHeight(); row += 8)
+                    transforms[i].inverseRow(coefficients[i], samples[i], row, ends[i]);
+
+            int lines = Math.min(strip, height - line);
+            try (Metrics.Span span = Metrics.start(Metrics.Stage.COLOR_CONVERT)) {
+                span.units((long) lines * width);
+                for (int i = 0; i < lines; i++)
+                    ColorConverter.yuvToPackedRgb(samples[0], samples[1], samples[2], i, i / vertical, horizontal, rgb, i * rowLength, width);
+            }
+            try (Metrics.Span span = Metrics.start(Metrics.Stage.WRITE)) {
+                span.units((long) lines * width).bytesOut((long) lines * rowLength);
+                for (int i = 0; i < lines; i++)
+                    sink.writeRow(rgb, i * rowLength, rowLength);
+            }
+        }
+    }
+
+    private static Plane[] allocateStrip(int width, int height, Plane.Storage storage) {
+        return new Plane[]{
+                Plane.allocate(width, height, storage),
+                Plane.allocate(width, height, storage),
+                Plane.allocate(width, height, storage)
+        };
+    }
+
+    private Plane[] allocateCoefficients(Plane[] samples) {
+        Plane[] coefficients = new Plane[3];
+        for (int i = 0; i < 3; i++)
+            coefficients[i] = Plane.allocate(samples[i].getWidth(), samples[i].getHeight(), coefficientStorage);
+        return coefficients;
+    }
+
+    // the planes blocks are cut from: Y, and U and V decimated to one 8 line block row unless the strip is one already
+    private static Plane[] chromaStrip(Plane[] yuv, int chromaWidth) {
+        if (yuv[0].getWidth() == chromaWidth && yuv[0].getHeight() == 8)
+            return yuv.clone();
+        return new Plane[]{yuv[0], Plane.allocate(chromaWidth, 8, yuv[0].getStorage()),
+                Plane.allocate(chromaWidth, 8, yuv[0].getStorage())};
+    }
+
+    // repeats the last real column and line over the padding
+    private static void pad(Plane plane, int width, int lines) {
+        for (int line = 0; line < lines; line++)
+            for (int column = width; column < plane.getWidth(); column++)
+                plane.set(line, column, plane.get(line, width - 1));
+        for (int line = lines; line < plane.getHeight(); line++)
+            for (int column = 0; column < plane.getWidth(); column++)
+                plane.set(line, column, plane.get(lines - 1, column));
+    }
+}
@@ -0,0 +1,193 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of decoded MCUs that {@link RegionDecoder}s share, so repeated and overlapping regions of an
+ * image skip the entropy decoding and inverse transforms of the MCUs an earlier call already decoded.
+ * <p>
+ * Tiles are keyed by the id of their image, the sample storage and DCT engine they were decoded with, the
+ * scale they were decoded at and the index of their MCU, so decoders of one image with different settings
+ * never read each other's tiles. The keys are spread over segments, each an LRU list behind its own lock
+ * that holds an equal share of the byte budget and evicts its least recently used tiles once it goes over,
+ * so threads working on different tiles rarely wait for each other. Tiles live in heap buffers, or with
+ * offHeap in direct buffers outside the Java heap, and are never modified once cached.
+ */
+public class TileCache {
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long maxBytes;
+    private final boolean offHeap;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public TileCache(long maxBytes) {
+        this(maxBytes, false);
+    }
+
+    /**
+     * @param maxBytes bytes of tile data the cache holds at most
+     * @param offHeap  whether tiles are stored in direct buffers
+     */
+    public TileCache(long maxBytes, boolean offHeap) {
+        if (maxBytes < SEGMENTS)
+            throw new IllegalArgumentException("Tile cache size must be at least " + SEGMENTS + " bytes: " + maxBytes);
+        this.maxBytes = maxBytes;
+        this.offHeap = offHeap;
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment(maxBytes / SEGMENTS);
+    }
+
+    /**
+     * An empty tile of size bytes in native byte order, to be filled and then handed to {@link #put}.
+     */
+    ByteBuffer allocate(int size) {
+        return (offHeap ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size)).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * The tile cached for the MCU, or null. Counts as a hit or a miss.
+     */
+    ByteBuffer get(String imageId, Plane.Storage storage, Class<? extends DCTEngine> engine, int scale, int mcu) {
+        Key key = new Key(imageId, storage, engine, scale, mcu);
+        ByteBuffer tile = segmentOf(key).get(key);
+        (tile == null ? misses : hits).increment();
+        return tile;
+    }
+
+    /**
+     * Caches tile, which may only be read with absolute gets from now on.
+     */
+    void put(String imageId, Plane.Storage storage, Class<? extends DCTEngine> engine, int scale, int mcu, ByteBuffer tile) {
+        Key key = new Key(imageId, storage, engine, scale, mcu);
+        segmentOf(key).put(key, tile);
+    }
+
+    /**
+     * Drops the tiles of an image, for instance because its file was rewritten.
+     */
+    public void invalidate(String imageId) {
+        for (Segment segment : segments)
+            segment.removeIf(imageId);
+    }
+
+    public void clear() {
+        for (Segment segment : segments)
+            segment.removeIf(null);
+    }
+
+    // the top bits of a multiplicative hash, as the hash map of a segment indexes its table with the bottom ones
+    private Segment segmentOf(Key key) {
+        return segments[key.hashCode() * 0x9e3779b9 >>> 32 - SEGMENT_BITS];
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Tiles dropped to stay within the size, not counting those dropped by {@link #invalidate} or {@link #clear}.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Bytes of tile data held now.
+     */
+    public long getSize() {
+        long size = 0;
+        for (Segment segment : segments)
+            size += segment.getBytes();
+        return size;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    private static final class Key {
+        private final String imageId;
+        private final Plane.Storage storage;
+        private final Class<? extends DCTEngine> engine;
+        private final int scale;
+        private final int mcu;
+
+        Key(String imageId, Plane.Storage storage, Class<? extends DCTEngine> engine, int scale, int mcu) {
+            this.imageId = imageId;
+            this.storage = storage;
+            this.engine = engine;
+            this.scale = scale;
+            this.mcu = mcu;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key))
+                return false;
+            Key key = (Key) other;
+            return mcu == key.mcu && scale == key.scale && storage == key.storage && engine == key.engine
+                    && imageId.equals(key.imageId);
+        }
+
+        @Override
+        public int hashCode() {
+            return (((imageId.hashCode() * 31 + storage.hashCode()) * 31 + engine.hashCode()) * 31 + scale) * 31 + mcu;
+        }
+    }
+
+    private final class Segment {
+        // access order, so iteration starts at the least recently used tile
+        private final LinkedHashMap<Key, ByteBuffer> tiles = new LinkedHashMap<>(16, 0.75f, true);
+        private final long maxBytes;
+        private long bytes;
+
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized ByteBuffer get(Key key) {
+            return tiles.get(key);
+        }
+
+        synchronized void put(Key key, ByteBuffer tile) {
+            if (tile.capacity() > maxBytes)
+                return;
+            ByteBuffer old = tiles.put(key, tile);
+            bytes += tile.capacity() - (old == null ? 0 : old.capacity());
+            for (Iterator<ByteBuffer> eldest = tiles.values().iterator(); bytes > maxBytes; evictions.increment()) {
+                bytes -= eldest.next().capacity();
+                eldest.remove();
+            }
+        }
+
+        // null removes every tile
+        synchronized void removeIf(String imageId) {
+            for (Iterator<Map.Entry<Key, ByteBuffer>> entries = tiles.entrySet().iterator(); entries.hasNext(); ) {
+                Map.Entry<Key, ByteBuffer> entry = entries.next();
+                if (imageId == null || entry.getKey().imageId.equals(imageId)) {
+                    bytes -= entry.getValue().capacity();
+                    entries.remove();
+                }
+            }
+        }
+
+        synchronized long getBytes() {
+            return bytes;
+        }
+    }
+}
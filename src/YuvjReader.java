@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Opens a .yuvj file written by {@link YuvjWriter}. The file is memory-mapped; the header and tables are parsed
+ * up front and the payload is handed out as a read-only view of the mapping, so it can be decoded any number
+ * of times, by any number of threads, without copying. The header, the payload and the restart index are
+ * mapped apart, so only the payload has to fit in the 2 GB a buffer can address, which the writer ensures.
+ */
+public class YuvjReader {
+    // the longest header, with 255 quantization tables and Huffman tables of 256 values, is under 34 KB
+    private static final int HEADER_LIMIT = 1 << 16;
+
+    private final String fileName;
+    private final long size;
+    private MappedByteBuffer payload;
+
+    private int width;
+    private int height;
+    private ChromaMode chromaMode;
+    private int restartInterval;
+    private boolean delta;
+    private QuantizationTable[] quantization;
+    private final int[] componentTables = new int[3];
+    private final HuffmanTable[] huffmanTables = new HuffmanTable[4];
+    private int[] restarts;
+
+    public YuvjReader(String fileName) throws IOException {
+        this.fileName = fileName;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            size = channel.size();
+            try {
+                readHeader(channel);
+            } catch (RuntimeException e) {
+                throw new IOException("Corrupt .yuvj file: " + fileName, e);
+            }
+        }
+    }
+
+    private void readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, HEADER_LIMIT));
+        if (header.limit() < 5 || header.getInt(0) != YuvjWriter.MAGIC)
+            throw new IOException("Not a .yuvj file: " + fileName);
+        int version = header.get(4);
+        if (version < 1 || version > YuvjWriter.VERSION)
+            throw new IOException(String.format("Unsupported .yuvj version %s in %s", version, fileName));
+        header.position(5);
+        width = header.getInt();
+        height = header.getInt();
+        chromaMode = ChromaMode.fromCode(header.get());
+        restartInterval = header.getShort() & 0xffff;
+        delta = version > 1 && (header.get() & YuvjWriter.DELTA) != 0;
+        if (width <= 0 || height <= 0)
+            throw new IOException(String.format("Invalid .yuvj header in %s: %s %s", fileName, width, height));
+
+        quantization = new QuantizationTable[header.get() & 0xff];
+        for (int t = 0; t < quantization.length; t++) {
+            int[] divisors = new int[64];
+            for (int i = 0; i < 64; i++) divisors[i] = header.getShort() & 0xffff;
+            quantization[t] = new QuantizationTable(divisors);
+        }
+        for (int i = 0; i < 3; i++) {
+            componentTables[i] = header.get() & 0xff;
+            if (componentTables[i] >= quantization.length)
+                throw new IOException("Missing quantization table in " + fileName);
+        }
+
+        for (int t = 0; t < 4; t++) {
+            int[] bits = new int[16];
+            int total = 0;
+            for (int i = 0; i < 16; i++) total += bits[i] = header.get() & 0xff;
+            int[] values = new int[total];
+            for (int i = 0; i < total; i++) values[i] = header.get() & 0xff;
+            huffmanTables[t] = new HuffmanTable(bits, values);
+        }
+
+        int payloadLength = header.getInt();
+        long indexOffset = header.position() + (long) payloadLength;
+        if (payloadLength < 0 || indexOffset + 4 > size)
+            throw new IOException("Truncated .yuvj payload in " + fileName);
+        payload = channel.map(FileChannel.MapMode.READ_ONLY, header.position(), payloadLength);
+        ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, Math.min(size - indexOffset, Integer.MAX_VALUE));
+        restarts = new int[index.getInt()];
+        for (int i = 0; i < restarts.length; i++) restarts[i] = index.getInt();
+    }
+
+    /**
+     * The entropy coded payload, from position 0 to its limit.
+     */
+    public ByteBuffer getPayload() {
+        return payload.asReadOnlyBuffer();
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public EntropyCoder createEntropyCoder() {
+        return new EntropyCoder(huffmanTables[0], huffmanTables[1], huffmanTables[2], huffmanTables[3]);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public ChromaMode getChromaMode() {
+        return chromaMode;
+    }
+
+    public int getRestartInterval() {
+        return restartInterval;
+    }
+
+    /**
+     * Whether this is a delta frame, which only a {@link SequenceDecoder} that decoded the frames before it
+     * can decode.
+     */
+    public boolean isDelta() {
+        return delta;
+    }
+
+    public QuantizationTable getQuantization(int component) {
+        return quantization[componentTables[component]];
+    }
+
+    public HuffmanTable[] getHuffmanTables() {
+        return huffmanTables.clone();
+    }
+
+    public int[] getRestarts() {
+        return restarts.clone();
+    }
+
+    public long getFileSize() {
+        return size;
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes the .yuvj container. Everything is big-endian:
+ * <pre>
+ * "YUVJ"                magic
+ * u8                    version, 2
+ * u32 u32               width, height
+ * u8                    chroma mode, 0 = 4:4:4, 1 = 4:2:2, 2 = 4:2:0, see {@link ChromaMode}
+ * u16                   restart interval in MCUs, 0 when the payload has no restarts
+ * u8                    flags, bit 0 set for a delta frame of a {@link SequenceEncoder}; absent in version 1
+ * u8 + n * 64 * u16     quantization tables, row-major
+ * 3 * u8                quantization table of Y, U and V
+ * 4 * (16 * u8 + vals)  Huffman tables: luma DC, luma AC, chroma DC, chroma AC as code length counts and values
+ * u32 + bytes           entropy coded payload, one MCU (its Y blocks in raster order, a U and a V block) after the other
+ * u32 + n * u32         restart index: payload offset of every restart interval, the first one included
+ * </pre>
+ * The header goes out on construction, the payload is streamed through this class as an {@link OutputStream}
+ * and the payload length and the restart index are filled in on {@link #close()}.
+ * <p>
+ * Payload offsets are u32, and a reader maps the payload as one buffer, so it may be at most 2 GB - 1 bytes.
+ * That is far more than a gigapixel image takes at usual qualities; a write that would go over it fails at
+ * once, and the unfinished file is deleted on close.
+ * <p>
+ * In a delta frame every block is preceded by one bit: 1 for a block left as it was in the frame before, which
+ * has nothing else coded, 0 for a block coded as usual.
+ */
+public class YuvjWriter extends OutputStream {
+    static final int MAGIC = 0x5955564a; // "YUVJ"
+    static final int VERSION = 2;
+    static final int DELTA = 1;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private final long lengthPosition;
+    private long payloadLength;
+    private int[] restarts = new int[16];
+    private int restartCount;
+    private boolean tooLarge;
+
+    public YuvjWriter(String fileName, int width, int height, ChromaMode chromaMode, int restartInterval,
+                      QuantizationTable[] quantization, int[] componentTables, HuffmanTable[] huffmanTables) throws IOException {
+        this(fileName, width, height, chromaMode, restartInterval, quantization, componentTables, huffmanTables, false);
+    }
+
+    public YuvjWriter(String fileName, int width, int height, ChromaMode chromaMode, int restartInterval,
+                      QuantizationTable[] quantization, int[] componentTables, HuffmanTable[] huffmanTables,
+                      boolean delta) throws IOException {
+        path = Paths.get(fileName);
+        channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.putInt(MAGIC);
+        buffer.put((byte) VERSION);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.put((byte) chromaMode.getCode());
+        buffer.putShort((short) restartInterval);
+        buffer.put((byte) (delta ? DELTA : 0));
+
+        buffer.put((byte) quantization.length);
+        for (QuantizationTable table : quantization)
+            for (int i = 0; i < 64; i++) buffer.putShort((short) table.getDivisor(i));
+        for (int i = 0; i < 3; i++) buffer.put((byte) componentTables[i]);
+
+        for (HuffmanTable table : huffmanTables) {
+            for (int count : table.getBits()) buffer.put((byte) count);
+            for (int value : table.getValues()) buffer.put((byte) value);
+        }
+
+        lengthPosition = buffer.position();
+        buffer.putInt(0);
+    }
+
+    /**
+     * Records that a restart interval starts at the given payload offset.
+     */
+    public void addRestart(long offset) {
+        if (restartCount == restarts.length)
+            restarts = Arrays.copyOf(restarts, restartCount * 2);
+        restarts[restartCount++] = (int) offset;
+    }
+
+    /**
+     * Payload bytes written so far.
+     */
+    public long getPayloadLength() {
+        return payloadLength;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkLength(1);
+        if (!buffer.hasRemaining())
+            drain();
+        buffer.put((byte) b);
+        payloadLength++;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        checkLength(length);
+        payloadLength += length;
+        while (length > 0) {
+            if (!buffer.hasRemaining())
+                drain();
+            int chunk = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    private void checkLength(int length) throws IOException {
+        if (payloadLength + length > Integer.MAX_VALUE) {
+            tooLarge = true;
+            throw new IOException("Payload of " + path + " over the 2 GB a .yuvj file holds; encode at a lower quality or in parts");
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (tooLarge) {
+            channel.close();
+            Files.deleteIfExists(path);
+            return;
+        }
+        try {
+            if (buffer.remaining() < 4)
+                drain();
+            buffer.putInt(restartCount);
+            for (int i = 0; i < restartCount; i++) {
+                if (buffer.remaining() < 4)
+                    drain();
+                buffer.putInt(restarts[i]);
+            }
+            drain();
+            ByteBuffer length = ByteBuffer.allocate(4).putInt(0, (int) payloadLength);
+            channel.write(length, lengthPosition);
+        } finally {
+            channel.close();
+        }
+    }
+}